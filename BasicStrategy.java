@@ -0,0 +1,249 @@
+/**
+ * BasicStrategy.java
+ *
+ * <code>BasicStrategy</code> is the best decision for every player total,
+ * soft or hard, against every dealer up card, worked out once for a set
+ * of table rules. The shared INSTANCE is for the default rules:
+ *      the dealer draws to 16 and stands on all 17s,
+ *      naturals are settled before the player acts,
+ *      and a player who reaches 21 wins the hand.
+ * Other rules get strategies of their own from <code>forRules</code>,
+ * which also decide doubling, splitting and surrender where allowed.
+ * Splits are judged as if the pair could not be split again.
+ * Cards are assumed to come from an infinite shoe. The results are kept
+ * in flat arrays, so a decision is a single array read.
+ */
+public final class BasicStrategy implements PlayerStrategy {
+
+	/** The action codes stored in the table. */
+	public static final byte STAND = 0;
+	public static final byte HIT = 1;
+
+	/** The chance of drawing each point value, 1 (ace) to 10. */
+	private static final double[] P = new double[11];
+
+	static {
+		for (int v = 1; v <= 9; v++) {
+			P[v] = 1.0 / 13;
+		}
+		P[10] = 4.0 / 13;
+	}
+
+	/** The shared instance, for the default rules. */
+	public static final BasicStrategy INSTANCE = new BasicStrategy(Rules.DEFAULT);
+
+	/** The rules the tables were worked out for. */
+	private final Rules rules;
+	/** The best of hitting and standing, by index(total, soft, upValue). */
+	private final byte[] actions = new byte[22 * 2 * 10];
+	/** The expected result of that action per unit bet, by the same index. */
+	private final double[] expected = new double[actions.length];
+	/** Whether a hand's first two cards are best doubled or surrendered, by the same index. */
+	private final boolean[] doubles = new boolean[actions.length];
+	private final boolean[] surrenders = new boolean[actions.length];
+	/** Whether a pair is best split, by pair value and up card. */
+	private final boolean[] splits = new boolean[11 * 10];
+
+
+	private BasicStrategy(Rules rules) {
+		this.rules = rules;
+		for (int up = 1; up <= 10; up++) {
+			solve(up);
+		}
+	}
+
+	/**
+	 * Works out basic strategy for a set of rules.
+	 * @param rules the rules.
+	 * @return INSTANCE for the default rules, otherwise a new strategy.
+	 */
+	public static BasicStrategy forRules(Rules rules) {
+		return rules.equals(Rules.DEFAULT) ? INSTANCE : new BasicStrategy(rules);
+	}
+
+	/** @return the rules this strategy was worked out for. */
+	public Rules rules() {
+		return rules;
+	}
+
+	/**
+	 * Computes the table index of a decision.
+	 * @param total the player's total.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param upValue the point value of the dealer's up card, 1 (ace) to 10.
+	 * @return the index into the tables.
+	 */
+	private static int index(int total, boolean soft, int upValue) {
+		return ((total << 1) | (soft ? 1 : 0)) * 10 + upValue - 1;
+	}
+
+	/**
+	 * Looks up the best action under the default rules.
+	 * @param total the player's total, 21 or less.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param upValue the point value of the dealer's up card, 1 (ace) to 10.
+	 * @return HIT or STAND.
+	 */
+	public static byte action(int total, boolean soft, int upValue) {
+		return INSTANCE.actions[index(total, soft, upValue)];
+	}
+
+	/**
+	 * Looks up the expected result of the best action under the default rules.
+	 * @param total the player's total, 21 or less.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param upValue the point value of the dealer's up card, 1 (ace) to 10.
+	 * @return the expected win (positive) or loss (negative) per unit bet.
+	 */
+	public static double expectedValue(int total, boolean soft, int upValue) {
+		return INSTANCE.expected[index(total, soft, upValue)];
+	}
+
+	@Override
+	public boolean shouldHit(int playerTotal, boolean soft, int dealerUpValue) {
+		return actions[index(playerTotal, soft, dealerUpValue)] == HIT;
+	}
+
+	@Override
+	public boolean shouldDouble(int playerTotal, boolean soft, int dealerUpValue) {
+		return doubles[index(playerTotal, soft, dealerUpValue)];
+	}
+
+	@Override
+	public boolean shouldSplit(int pairValue, int dealerUpValue) {
+		return splits[pairValue * 10 + dealerUpValue - 1];
+	}
+
+	@Override
+	public boolean shouldSurrender(int playerTotal, boolean soft, int dealerUpValue) {
+		return surrenders[index(playerTotal, soft, dealerUpValue)];
+	}
+
+	/**
+	 * Fills in the tables for one dealer up card.
+	 */
+	private void solve(int up) {
+		// the dealer's final total, 17 to 21 then bust, given no natural
+		double[] dealer = new double[6];
+		double excluded = up == 1 ? P[10] : up == 10 ? P[1] : 0;
+		for (int hole = 1; hole <= 10; hole++) {
+			if ((up == 1 && hole == 10) || (up == 10 && hole == 1)) {
+				continue;
+			}
+			dealerFinish(up + hole, up == 1 || hole == 1, P[hole] / (1 - excluded), dealer);
+		}
+
+		// best[hard][ace]: expected result of playing on from that hand by hitting or standing
+		double[][] best = new double[22][2];
+		for (int hard = 21; hard >= 2; hard--) {
+			for (int ace = 0; ace < 2; ace++) {
+				int total = total(hard, ace == 1);
+				double stand = stand(total, dealer);
+
+				double hit = 0;
+				for (int v = 1; v <= 10; v++) {
+					int nextHard = hard + v;
+					int nextAce = (ace == 1 || v == 1) ? 1 : 0;
+					if (nextHard > 21) {
+						hit -= P[v];
+					} else if (total(nextHard, nextAce == 1) == 21 && rules.twentyOneWins()) {
+						hit += P[v];
+					} else {
+						hit += P[v] * best[nextHard][nextAce];
+					}
+				}
+
+				best[hard][ace] = Math.max(stand, hit);
+
+				int i = index(total, ace == 1 && hard <= 11, up);
+				actions[i] = hit > stand ? HIT : STAND;
+				expected[i] = best[hard][ace];
+
+				double doubled = rules.canDouble(total, ace == 1 && hard <= 11) ? doubled(hard, ace == 1, dealer) : -2;
+				doubles[i] = doubled > best[hard][ace];
+				surrenders[i] = rules.surrender() && -0.5 > Math.max(best[hard][ace], doubled);
+			}
+		}
+
+		if (rules.maxHands() > 1) {
+			for (int pair = 1; pair <= 10; pair++) {
+				// each hand starts from one card of the pair and draws its second
+				double hand = 0;
+				for (int v = 1; v <= 10; v++) {
+					int hard = pair + v;
+					boolean ace = pair == 1 || v == 1;
+					int total = total(hard, ace);
+					double value;
+					if (total == 21 && rules.twentyOneWins()) {
+						value = 1;
+					} else if (pair == 1 && !rules.hitSplitAces()) {
+						value = stand(total, dealer);
+					} else {
+						value = best[hard][ace ? 1 : 0];
+						if (rules.doubleAfterSplit() && rules.canDouble(total, ace && hard <= 11)) {
+							value = Math.max(value, doubled(hard, ace, dealer));
+						}
+					}
+					hand += P[v] * value;
+				}
+
+				int i = index(total(pair * 2, pair == 1), pair == 1, up);
+				double keep = Math.max(expected[i], doubles[i] ? doubled(pair * 2, pair == 1, dealer) : -2);
+				splits[pair * 10 + up - 1] = 2 * hand > Math.max(keep, rules.surrender() ? -0.5 : -2);
+			}
+		}
+	}
+
+	/**
+	 * The expected result of doubling a hand, per unit of the original bet.
+	 */
+	private double doubled(int hard, boolean ace, double[] dealer) {
+		double ev = 0;
+		for (int v = 1; v <= 10; v++) {
+			int nextHard = hard + v;
+			int total = total(nextHard, ace || v == 1);
+			if (nextHard > 21) {
+				ev -= P[v];
+			} else if (total == 21 && rules.twentyOneWins()) {
+				ev += P[v];
+			} else {
+				ev += P[v] * stand(total, dealer);
+			}
+		}
+		return 2 * ev;
+	}
+
+	private static int total(int hard, boolean ace) {
+		return (ace && hard <= 11) ? hard + 10 : hard;
+	}
+
+	/**
+	 * Adds the chances of the dealer's final totals, drawing as the rules say.
+	 */
+	private void dealerFinish(int hard, boolean ace, double p, double[] out) {
+		if (hard > 21) {
+			out[5] += p;
+			return;
+		}
+		if (!rules.dealerHits(hard, ace)) {
+			out[total(hard, ace) - 17] += p;
+			return;
+		}
+		for (int v = 1; v <= 10; v++) {
+			dealerFinish(hard + v, ace || v == 1, p * P[v], out);
+		}
+	}
+
+	/**
+	 * The expected result of standing on a total.
+	 */
+	private double stand(int total, double[] dealer) {
+		double ev = 0;
+		for (int d = 17; d <= 22; d++) {
+			int kind = rules.settle(total, d);
+			double p = dealer[d - 17];
+			ev += kind == Rules.WIN ? p : kind == Rules.LOSE ? -p : 0;
+		}
+		return ev;
+	}
+}
@@ -0,0 +1,307 @@
+import java.util.random.RandomGenerator;
+
+/**
+ * BatchEvaluator.java
+ *
+ * <code>BatchEvaluator</code> plays many single-seat tables in lock-step,
+ * one round at every table before the next, for simulation. Each table,
+ * or lane, has a shoe of its own with a cut card, and every hand is held
+ * as a few numbers in arrays indexed by lane rather than as objects, so
+ * each step of a round is a tight loop over all the lanes: dealing, the
+ * naturals, the player's decisions, the dealer's draws and the
+ * settlement. The rules are read from the compiled tables of a
+ * <code>Rules</code>, as <code>BlackjackEngine</code> reads them, except
+ * that pairs are never split and insurance is always declined.
+ * <p>
+ * Only the point values of the cards are kept, so a lane's shoe is a run
+ * of bytes from 1 to 10. Nothing is allocated once the batch is made.
+ */
+public class BatchEvaluator {
+
+	/** The amount bet on each hand. */
+	private static final int BET = Simulator.BET;
+
+	/** What a lane's hand is waiting for this round. */
+	private static final byte ACTING = 0;
+	private static final byte STANDING = 1;
+	private static final byte SETTLED = 2;
+
+	/** The rules every lane plays by. */
+	private final Rules rules;
+	/** The strategy's decisions for every total, softness and dealer up card; see decision(). */
+	private final boolean[] hits = new boolean[2 * 22 * 11];
+	private final boolean[] doubles = new boolean[hits.length];
+	private final boolean[] surrenders = new boolean[hits.length];
+	/** The number of lanes. */
+	private final int lanes;
+	/** The number of cards in each lane's shoe, and how few undealt ones bring out the cut card. */
+	private final int shoeSize;
+	private final int cutCard;
+	private final RandomGenerator rng;
+
+	/** Every lane's shoe, lane after lane, dealt from the top of each down. */
+	private final byte[] shoes;
+	/** Each lane's undealt cards, and the number there were when the round started. */
+	private final int[] undealt;
+	private final int[] roundStart;
+
+	/** Each lane's hand: its total counting aces as 1, whether it holds an ace, its number of cards. */
+	private final int[] hard;
+	private final boolean[] ace;
+	private final int[] cards;
+	/** The dealer's hand in each lane, and the point value of the face up card. */
+	private final int[] dealerHard;
+	private final boolean[] dealerAce;
+	private final int[] upValue;
+	/** Where each lane's round stands, what is staked on the hand, and what it won or lost. */
+	private final byte[] state;
+	private final int[] stake;
+	private final int[] net;
+
+
+	/**
+	 * Creates a new <code>BatchEvaluator</code> with every lane's shoe shuffled.
+	 * @param strategy the strategy every hand is played with.
+	 * @param rules the rules every lane plays by.
+	 * @param decks the number of decks in each lane's shoe.
+	 * @param penetration the fraction of each shoe dealt before the cut card comes out.
+	 * @param lanes the number of tables played in lock-step.
+	 * @param rng the generator every shuffle is drawn from.
+	 * @throws IllegalArgumentException if decks, penetration or lanes is out
+	 *         of range, or the rules allow splitting.
+	 */
+	public BatchEvaluator(PlayerStrategy strategy, Rules rules, int decks, double penetration, int lanes, RandomGenerator rng) {
+		if (decks < Shoe.MIN_DECKS || decks > Shoe.MAX_DECKS) {
+			throw new IllegalArgumentException("decks must be " + Shoe.MIN_DECKS + " to " + Shoe.MAX_DECKS + ": " + decks);
+		}
+		if (!(penetration > 0 && penetration <= 1)) {
+			throw new IllegalArgumentException("penetration must be in (0, 1]: " + penetration);
+		}
+		if (lanes < 1) {
+			throw new IllegalArgumentException("lanes must be at least 1: " + lanes);
+		}
+		if (rules.maxHands() > 1) {
+			throw new IllegalArgumentException("lanes cannot split pairs: " + rules);
+		}
+		for (int total = 0; total <= 21; total++) {
+			for (int up = 1; up <= 10; up++) {
+				for (int soft = 0; soft < 2; soft++) {
+					int i = decision(total, soft == 1, up);
+					hits[i] = strategy.shouldHit(total, soft == 1, up);
+					doubles[i] = rules.canDouble(total, soft == 1) && strategy.shouldDouble(total, soft == 1, up);
+					surrenders[i] = rules.surrender() && strategy.shouldSurrender(total, soft == 1, up);
+				}
+			}
+		}
+
+		this.rules = rules;
+		this.lanes = lanes;
+		this.shoeSize = decks * Card.COUNT;
+		this.cutCard = shoeSize - (int) Math.round(shoeSize * penetration);
+		this.rng = rng;
+
+		shoes = new byte[lanes * shoeSize];
+		undealt = new int[lanes];
+		roundStart = new int[lanes];
+		hard = new int[lanes];
+		ace = new boolean[lanes];
+		cards = new int[lanes];
+		dealerHard = new int[lanes];
+		dealerAce = new boolean[lanes];
+		upValue = new int[lanes];
+		state = new byte[lanes];
+		stake = new int[lanes];
+		net = new int[lanes];
+
+		for (int lane = 0; lane < lanes; lane++) {
+			for (int k = 0; k < shoeSize; k++) {
+				shoes[lane * shoeSize + k] = (byte) Card.points(k % Card.COUNT);
+			}
+			shuffle(lane);
+		}
+	}
+
+	private static int decision(int total, boolean soft, int upValue) {
+		return ((soft ? 22 : 0) + total) * 11 + upValue;
+	}
+
+	/** @return the number of tables played in lock-step. */
+	public int lanes() {
+		return lanes;
+	}
+
+	/**
+	 * Plays hands until there have been at least the given number, a round
+	 * at every lane at a time, the last round at only as many as are needed.
+	 * @param hands the number of hands to play.
+	 * @param result where every hand is recorded.
+	 */
+	public void play(long hands, SimulationResult result) {
+		while (hands > 0) {
+			int n = (int) Math.min(hands, lanes);
+			playRound(n, result);
+			hands -= n;
+		}
+	}
+
+	/**
+	 * Plays one round at each of the first n lanes.
+	 * @param n the number of lanes to play.
+	 * @param result where every hand is recorded.
+	 */
+	public void playRound(int n, SimulationResult result) {
+		for (int lane = 0; lane < n; lane++) {
+			if (undealt[lane] <= cutCard) {
+				shuffle(lane);
+			}
+			roundStart[lane] = undealt[lane];
+		}
+
+		// two cards each, the player's first, as the engine deals them; the dealer's second is face up
+		for (int lane = 0; lane < n; lane++) {
+			int p1 = draw(lane);
+			int d1 = draw(lane);
+			int p2 = draw(lane);
+			int d2 = draw(lane);
+			hard[lane] = p1 + p2;
+			ace[lane] = p1 == 1 || p2 == 1;
+			cards[lane] = 2;
+			dealerHard[lane] = d1 + d2;
+			dealerAce[lane] = d1 == 1 || d2 == 1;
+			upValue[lane] = d2;
+		}
+
+		// naturals settle at once, insurance having been declined
+		for (int lane = 0; lane < n; lane++) {
+			int kind = Rules.naturals(hard[lane] == 11 && ace[lane], dealerHard[lane] == 11 && dealerAce[lane]);
+			stake[lane] = BET;
+			net[lane] = kind < 0 ? 0 : (int) rules.payout(kind, BET) - BET;
+			state[lane] = kind < 0 ? ACTING : SETTLED;
+		}
+
+		// the players decide a card at a time, every lane still acting in each pass
+		boolean acting = true;
+		while (acting) {
+			acting = false;
+			for (int lane = 0; lane < n; lane++) {
+				if (state[lane] != ACTING) {
+					continue;
+				}
+				boolean soft = ace[lane] && hard[lane] <= 11;
+				int total = soft ? hard[lane] + 10 : hard[lane];
+				int i = decision(total, soft, upValue[lane]);
+				boolean first = cards[lane] == 2;
+				if (first && surrenders[i]) {
+					net[lane] = (int) rules.payout(Rules.SURRENDER, BET) - BET;
+					state[lane] = SETTLED;
+					continue;
+				}
+				boolean doubled = first && doubles[i];
+				if (!doubled && !hits[i]) {
+					state[lane] = STANDING;
+					continue;
+				}
+				int card = draw(lane);
+				hard[lane] += card;
+				ace[lane] |= card == 1;
+				cards[lane]++;
+				soft = ace[lane] && hard[lane] <= 11;
+				total = soft ? hard[lane] + 10 : hard[lane];
+				if (doubled) {
+					stake[lane] = 2 * BET;
+				}
+				if (total > 21 || (total == 21 && rules.twentyOneWins())) {
+					// over 21 loses; reaching 21 wins at once
+					net[lane] = total == 21 ? stake[lane] : -stake[lane];
+					state[lane] = SETTLED;
+				} else if (doubled || total == 21) {
+					state[lane] = STANDING;
+				} else {
+					acting = true;
+				}
+			}
+		}
+
+		// the dealer draws as the rules say wherever a hand is left standing
+		for (int lane = 0; lane < n; lane++) {
+			if (state[lane] != STANDING) {
+				continue;
+			}
+			int h = dealerHard[lane];
+			boolean a = dealerAce[lane];
+			while (rules.dealerHits(h, a)) {
+				int card = draw(lane);
+				h += card;
+				a |= card == 1;
+			}
+			dealerHard[lane] = h;
+			dealerAce[lane] = a;
+		}
+
+		// settle the standing hands by comparing totals, as BlackjackEngine.settle does
+		for (int lane = 0; lane < n; lane++) {
+			if (state[lane] != STANDING) {
+				continue;
+			}
+			int player = ace[lane] && hard[lane] <= 11 ? hard[lane] + 10 : hard[lane];
+			int dealer = dealerAce[lane] && dealerHard[lane] <= 11 ? dealerHard[lane] + 10 : dealerHard[lane];
+			net[lane] = (int) rules.payout(rules.settle(player, dealer), stake[lane]) - stake[lane];
+		}
+
+		for (int lane = 0; lane < n; lane++) {
+			boolean natural = cards[lane] == 2 && hard[lane] == 11 && ace[lane];
+			result.record(BET, net[lane], natural);
+		}
+	}
+
+	/**
+	 * Deals the top card of a lane's shoe. If it runs out in the middle of
+	 * a round, the discards are shuffled back in first.
+	 * @return the card's point value.
+	 */
+	private int draw(int lane) {
+		if (undealt[lane] == 0) {
+			reshuffleDiscards(lane);
+		}
+		return shoes[lane * shoeSize + --undealt[lane]];
+	}
+
+	/** Shuffles a lane's whole shoe, with an in-place Fisher-Yates shuffle. */
+	private void shuffle(int lane) {
+		shuffle(lane * shoeSize, shoeSize);
+		undealt[lane] = shoeSize;
+	}
+
+	/**
+	 * Shuffles a lane's discards back under its undealt cards, leaving the
+	 * cards dealt this round on the table, as <code>Deck.reshuffleDealt</code> does.
+	 */
+	private void reshuffleDiscards(int lane) {
+		int base = lane * shoeSize;
+		int inPlay = roundStart[lane] - undealt[lane];
+		// dealt cards are [in play | discards]; rotate them to [discards | in play]
+		reverse(base + undealt[lane], base + undealt[lane] + inPlay);
+		reverse(base + undealt[lane] + inPlay, base + shoeSize);
+		reverse(base + undealt[lane], base + shoeSize);
+		shuffle(base, shoeSize - inPlay);
+		undealt[lane] = shoeSize - inPlay;
+		roundStart[lane] = shoeSize;
+	}
+
+	private void shuffle(int from, int length) {
+		for (int k = length - 1; k > 0; k--) {
+			int r = rng.nextInt(k + 1);
+			byte tmp = shoes[from + k];
+			shoes[from + k] = shoes[from + r];
+			shoes[from + r] = tmp;
+		}
+	}
+
+	private void reverse(int from, int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
+			byte tmp = shoes[i];
+			shoes[i] = shoes[j];
+			shoes[j] = tmp;
+		}
+	}
+}
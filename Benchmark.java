@@ -0,0 +1,266 @@
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Benchmark.java
+ *
+ * <code>Benchmark</code> times the hot paths of the game and measures how
+ * much each one allocates. Results can be saved as a baseline, and later
+ * runs are compared against it so regressions show up.
+ * <pre>
+ *     java Benchmark              run and compare with the saved baseline
+ *     java Benchmark save         run and save the results as the new baseline
+ *     java Benchmark [save] name  run only the cases whose names contain name
+ * </pre>
+ */
+public class Benchmark {
+
+	/** The file baselines are kept in. */
+	private static final Path BASELINE = Paths.get("benchmark-baseline.txt");
+	/** A case is reported as a regression when it gets this much slower. */
+	private static final double REGRESSION = 0.10;
+	/** Time spent warming up and measuring each case, in nanoseconds. */
+	private static final long WARMUP_NANOS = 1_000_000_000L;
+	private static final long MEASURE_NANOS = 2_000_000_000L;
+
+	/** Keeps the JIT from removing the work being timed. */
+	private static long sink;
+
+	/**
+	 * One operation being measured. Returns something that depends on
+	 * the work done so it cannot be optimized away.
+	 */
+	private interface Op {
+		long run();
+	}
+
+	/** The cases, in the order they are run. */
+	private final Map<String, Op> cases = new LinkedHashMap<String, Op>();
+
+
+	private Benchmark() {
+		SplittableRandom rng = new SplittableRandom(42);
+
+		cases.put("deck.construct", () ->
+			new Deck(BlackjackEngine.RANKS, BlackjackEngine.SUITS, BlackjackEngine.POINT_VALUES, rng).ordinalAt(0));
+
+		Deck shuffled = new Deck(1, rng);
+		cases.put("deck.shuffle", () -> {
+			shuffled.shuffle();
+			return shuffled.ordinalAt(0);
+		});
+
+		Deck dealt = new Deck(1, rng);
+		cases.put("deck.deal", () -> {
+			if (dealt.isEmpty()) {
+				dealt.shuffle();
+			}
+			return dealt.deal().ordinal();
+		});
+
+		Deck counted = new Deck(6, rng);
+		counted.addDealListener(new CountTracker(counted.totalSize(), CountingSystem.HI_LO, CountingSystem.HI_OPT_I, CountingSystem.OMEGA_II));
+		cases.put("deck.deal.counted", () -> {
+			if (counted.isEmpty()) {
+				counted.shuffle();
+			}
+			return counted.dealOrdinal();
+		});
+
+		Deck forced = new Deck(Shoe.MAX_DECKS, rng);
+		cases.put("deck.deal(value)", () -> {
+			Card card = forced.deal(10);
+			if (card == null) {
+				// the index is built again after every shuffle, so that is timed too
+				forced.shuffle();
+				card = forced.deal(10);
+			}
+			return card.ordinal();
+		});
+
+		Deck shoe = new Deck(Shoe.MAX_DECKS, rng);
+		for (int i = 0; i < 100; i++) {
+			shoe.dealOrdinal();
+		}
+		StringBuilder dump = new StringBuilder();
+		cases.put("deck.dump", () -> {
+			dump.setLength(0);
+			try {
+				shoe.dump(dump);
+			} catch (IOException e) {
+				throw new java.io.UncheckedIOException(e);
+			}
+			return dump.length();
+		});
+
+		Hand typical = new Hand();
+		cases.put("hand.total.typical", () -> {
+			typical.clear();
+			typical.add(Card.ordinal(9, 0));
+			typical.add(Card.ordinal(4, 1));
+			typical.add(Card.ordinal(1, 2));
+			return typical.total();
+		});
+
+		Hand aces = new Hand();
+		cases.put("hand.total.aces", () -> {
+			aces.clear();
+			aces.add(Card.ordinal(Card.ACE, 0));
+			aces.add(Card.ordinal(Card.ACE, 1));
+			aces.add(Card.ordinal(Card.ACE, 2));
+			aces.add(Card.ordinal(Card.ACE, 3));
+			aces.add(Card.ordinal(4, 0));
+			return aces.total();
+		});
+
+		BlackjackEngine engine = new BlackjackEngine(new Shoe(6, Shoe.DEFAULT_PENETRATION, rng), 0);
+		cases.put("engine.round", () -> {
+			engine.setPlayerMoney(Simulator.BET);
+			engine.bet(Simulator.BET);
+			engine.deal();
+			while (!engine.isGameOver() && BasicStrategy.INSTANCE.shouldHit(engine.playerTotal(), engine.playerHand().isSoft(), engine.dealerUpCard().pointValue())) {
+				engine.hit();
+			}
+			if (!engine.isGameOver()) {
+				engine.stand();
+			}
+			return engine.playerMoney();
+		});
+
+		BlackjackEngine table = new BlackjackEngine(new Shoe(6, Shoe.DEFAULT_PENETRATION, rng), BlackjackEngine.MAX_SEATS, 0);
+		cases.put("engine.round.7seats", () -> {
+			for (int s = 0; s < table.seats(); s++) {
+				table.setPlayerMoney(s, Simulator.BET);
+				table.bet(s, Simulator.BET);
+			}
+			table.deal();
+			for (int s = 0; s < table.seats(); s++) {
+				Hand hand = table.playerHand(s);
+				while (table.turn() == s && BasicStrategy.INSTANCE.shouldHit(hand.total(), hand.isSoft(), table.dealerUpCard().pointValue())) {
+					table.hit(s);
+				}
+				if (table.turn() == s) {
+					table.stand(s);
+				}
+			}
+			return table.playerMoney(0);
+		});
+
+		BatchEvaluator batch = new BatchEvaluator(BasicStrategy.INSTANCE, Rules.DEFAULT, 6, Shoe.DEFAULT_PENETRATION, 256, rng);
+		SimulationResult batchResult = new SimulationResult();
+		cases.put("batch.round.256lanes", () -> {
+			batch.playRound(batch.lanes(), batchResult);
+			return batchResult.hands();
+		});
+
+		Metric metric = new Metric("benchmark");
+		cases.put("metric.record", () -> {
+			metric.record(sink & 0xFFFF);
+			return 0;
+		});
+
+		cases.put("strategy.lookup", () -> BasicStrategy.action(12 + (int) (sink & 7), (sink & 8) != 0, 1 + (int) (sink & 7)));
+
+		if (!GraphicsEnvironment.isHeadless()) {
+			CardGameGUI gui = new CardGameGUI();
+			cases.put("gui.repaint", () -> {
+				gui.repaint();
+				return 0;
+			});
+		}
+	}
+
+	/**
+	 * Runs an operation repeatedly for a while.
+	 * @return the time and allocation per operation, as {nanoseconds, bytes}.
+	 */
+	private static double[] measure(Op op, long nanos) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		long ops = 0;
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long end = start + nanos;
+		long now;
+		do {
+			for (int i = 0; i < 1000; i++) {
+				sink += op.run();
+			}
+			ops += 1000;
+			now = System.nanoTime();
+		} while (now < end);
+		bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+		return new double[] {(double) (now - start) / ops, (double) bytes / ops};
+	}
+
+	/**
+	 * Reads the saved baseline.
+	 * @return each case's saved line, by case name.
+	 */
+	private static Map<String, String> readBaseline() throws IOException {
+		Map<String, String> baseline = new LinkedHashMap<String, String>();
+		if (Files.exists(BASELINE)) {
+			for (String line : Files.readAllLines(BASELINE)) {
+				if (!line.startsWith("#") && !line.isBlank()) {
+					baseline.put(line.split(" ")[0], line);
+				}
+			}
+		}
+		return baseline;
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean save = args.length > 0 && args[0].equals("save");
+		String filter = args.length > (save ? 1 : 0) ? args[save ? 1 : 0] : "";
+
+		Map<String, String> baseline = readBaseline();
+		Map<String, String> results = new LinkedHashMap<String, String>(baseline);
+		int regressions = 0;
+
+		for (Map.Entry<String, Op> c : new Benchmark().cases.entrySet()) {
+			if (!c.getKey().contains(filter)) {
+				continue;
+			}
+			measure(c.getValue(), WARMUP_NANOS);
+			double[] result = measure(c.getValue(), MEASURE_NANOS);
+
+			String change = "";
+			String before = baseline.get(c.getKey());
+			if (before != null) {
+				double delta = result[0] / Double.parseDouble(before.split(" ")[1]) - 1;
+				change = String.format("%+7.1f%%", delta * 100);
+				if (delta > REGRESSION) {
+					change += "  REGRESSION";
+					regressions++;
+				}
+			}
+			System.out.printf("%-22s %12.1f ns/op %10.1f B/op  %s%n", c.getKey(), result[0], result[1], change);
+			results.put(c.getKey(), String.format(Locale.ROOT, "%s %.1f %.1f", c.getKey(), result[0], result[1]));
+		}
+
+		if (save) {
+			List<String> lines = new ArrayList<String>();
+			lines.add("# case ns/op bytes/op");
+			lines.addAll(results.values());
+			Files.write(BASELINE, lines);
+			System.out.println("baseline saved to " + BASELINE);
+		} else if (regressions > 0) {
+			System.out.println(regressions + " case(s) more than " + (int) (REGRESSION * 100) + "% slower than the baseline");
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+}
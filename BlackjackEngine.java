@@ -0,0 +1,1307 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * BlackjackEngine.java
+ *
+ * <code>BlackjackEngine</code> holds the rules of a single blackjack table
+ * without any display code. A table has one to seven seats sharing one shoe.
+ * A round is played with
+ *      bet, deal, hit, and stand (the last seat to stand plays the dealer and settles),
+ * and, where the table's <code>Rules</code> allow them, doubleDown, split,
+ * surrender, and insure while the dealer shows an ace.
+ * <code>bet</code> and <code>deal</code> may be called in either order,
+ * though a seat cannot bet once it has acted on its cards, nor act without
+ * a bet; naturals are settled as soon as both have happened, or once every
+ * seat has decided on insurance if it is offered.
+ * Cards are dealt in casino order, one to each seat and then the dealer, twice,
+ * and the seats play in order. A seat that splits plays its hands in the
+ * order they were made, each hand split off being dealt its second card
+ * when play reaches it. Everything about a seat is kept in arrays indexed
+ * by seat, and by hand within the seat. The methods without a seat act on seat 0.
+ */
+public class BlackjackEngine {
+
+	/** The ranks of a standard deck. */
+	public static final String[] RANKS = {"ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "jack", "queen", "king"};
+	/** The suits of a standard deck. */
+	public static final String[] SUITS = {"spades", "hearts", "diamonds", "clubs"};
+	/** The point values matching each element of RANKS. */
+	public static final int[] POINT_VALUES = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10};
+
+	/** The amount of money a player starts with. */
+	public static final int STARTING_MONEY = 100;
+	/** The most seats a table can have. */
+	public static final int MAX_SEATS = 7;
+
+	/** Starts every snapshot; the last byte is the layout version. */
+	private static final int SNAPSHOT_MAGIC = 0x424A5305;
+
+	/** The player's decisions, as recorded in a round's actions. */
+	public static final byte ACTION_HIT = 1;
+	public static final byte ACTION_STAND = 2;
+	public static final byte ACTION_DOUBLE = 3;
+	public static final byte ACTION_SPLIT = 4;
+	public static final byte ACTION_SURRENDER = 5;
+	public static final byte ACTION_INSURE = 6;
+	public static final byte ACTION_NO_INSURANCE = 7;
+
+	/** A hand's flags: it was doubled, it is one of a split pair of aces. */
+	private static final byte HAND_DOUBLED = 1;
+	private static final byte HAND_SPLIT_ACES = 2;
+
+	/**
+	 * The result of a round, in the order the table announces them.
+	 */
+	public enum Outcome {
+		NONE, PLAYER_BLACKJACK, DEALER_BLACKJACK, PUSH, PLAYER_BUST, DEALER_BUST, PLAYER_WON, DEALER_WON, SURRENDER
+	}
+
+	/** The shoe cards are dealt from. */
+	private Shoe shoe;
+	/** The rules of the table. */
+	private final Rules rules;
+	/** The number of seats. */
+	private final int seats;
+	/** the dealers hand and each seat's hands, the first the one dealt and the rest split from it */
+	private Hand dealerHand = new Hand();
+	private Hand[][] hands;
+	/** The number of hands each seat holds this round, and the one being played. */
+	private int[] handCount;
+	private int[] current;
+	/** The chips at stake on each of a seat's hands, and each hand's flags. */
+	private int[][] handBet;
+	private byte[][] handFlags;
+
+	/** Seat variables */
+	/** The outcome of each of a seat's hands, NONE until the hand is settled. */
+	private Outcome[][] outcomes;
+	/** true once a seat's turn is over: every hand of it stood, busted, reached 21, or was settled. */
+	private boolean[] stayed;
+	/** true once every hand of a seat is settled. */
+	private boolean[] gameOver;
+	/** true while a seat holds cards in the round being played. */
+	private boolean[] inRound;
+	private boolean[] betPlaced;
+
+	/** Every seat's money is kept in an account of the ledger. */
+	private final Ledger ledger;
+	private final int[] accounts;
+	/** The chips each seat has at stake on all its hands. */
+	private int[] betAmount;
+
+	/** No seat before this one is left to act this round. */
+	private int turn = 0;
+	/** true from the deal until every seat is settled. */
+	private boolean cardsDealt = false;
+	private boolean cheaterDetected = false;
+	/** true from a deal showing an ace, when the rules offer insurance, until every seat has decided. */
+	private boolean insuranceOpen;
+	/** Each seat's insurance stake in minor units, and whether it has decided. */
+	private long[] insurance;
+	private boolean[] insuranceDecided;
+
+	/** What each seat bet and was paid back this round in minor units, and its decisions in order. */
+	private long[] roundBet;
+	private long[] roundPayout;
+	private byte[][] actions;
+	private int[] actionCount;
+
+	/** listeners are told about every round settled. */
+	private RoundListener[] listeners = new RoundListener[0];
+
+	/** Hands settled and not yet counted in <code>Metrics</code>, and actions since one was timed. */
+	private long handsSettled;
+	private int sinceTimed;
+
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> with one seat, the default shoe
+	 * and the starting amount of money.
+	 */
+	public BlackjackEngine() {
+		this(new Shoe(), STARTING_MONEY);
+	}
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> with one seat.
+	 * @param shoe the shoe to deal from.
+	 * @param playerMoney the amount of money the player starts with.
+	 */
+	public BlackjackEngine(Shoe shoe, int playerMoney) {
+		this(shoe, 1, playerMoney);
+	}
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> with a ledger of its own.
+	 * @param shoe the shoe to deal from.
+	 * @param seats the number of seats, from 1 to MAX_SEATS.
+	 * @param playerMoney the amount of money each seat starts with.
+	 * @throws IllegalArgumentException if seats is out of range.
+	 */
+	public BlackjackEngine(Shoe shoe, int seats, int playerMoney) {
+		this(shoe, seats, playerMoney, new Ledger());
+	}
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> with a ledger of its own.
+	 * @param shoe the shoe to deal from.
+	 * @param seats the number of seats, from 1 to MAX_SEATS.
+	 * @param playerMoney the amount of money each seat starts with.
+	 * @param rules the rules of the table.
+	 * @throws IllegalArgumentException if seats is out of range.
+	 */
+	public BlackjackEngine(Shoe shoe, int seats, int playerMoney, Rules rules) {
+		this(shoe, seats, playerMoney, new Ledger(), rules);
+	}
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> with the default rules.
+	 * @see #BlackjackEngine(Shoe, int, int, Ledger, Rules)
+	 */
+	public BlackjackEngine(Shoe shoe, int seats, int playerMoney, Ledger ledger) {
+		this(shoe, seats, playerMoney, ledger, Rules.DEFAULT);
+	}
+
+	/**
+	 * Creates a new <code>BlackjackEngine</code> instance, opening an
+	 * account in the ledger for each seat.
+	 * @param shoe the shoe to deal from.
+	 * @param seats the number of seats, from 1 to MAX_SEATS.
+	 * @param playerMoney the amount of money each seat starts with.
+	 * @param ledger the ledger the seats' money is kept in, which may be
+	 *        shared with tables on other threads.
+	 * @param rules the rules of the table.
+	 * @throws IllegalArgumentException if seats is out of range.
+	 */
+	public BlackjackEngine(Shoe shoe, int seats, int playerMoney, Ledger ledger, Rules rules) {
+		if (seats < 1 || seats > MAX_SEATS) {
+			throw new IllegalArgumentException("seats must be 1 to " + MAX_SEATS + ": " + seats);
+		}
+		this.shoe = shoe;
+		this.rules = rules;
+		this.seats = seats;
+
+		int maxHands = rules.maxHands();
+		hands = new Hand[seats][maxHands];
+		handCount = new int[seats];
+		current = new int[seats];
+		handBet = new int[seats][maxHands];
+		handFlags = new byte[seats][maxHands];
+		outcomes = new Outcome[seats][maxHands];
+		stayed = new boolean[seats];
+		gameOver = new boolean[seats];
+		inRound = new boolean[seats];
+		betPlaced = new boolean[seats];
+		this.ledger = ledger;
+		accounts = new int[seats];
+		betAmount = new int[seats];
+		insurance = new long[seats];
+		insuranceDecided = new boolean[seats];
+		roundBet = new long[seats];
+		roundPayout = new long[seats];
+		actions = new byte[seats][8];
+		actionCount = new int[seats];
+
+		for (int s = 0; s < seats; s++) {
+			for (int h = 0; h < maxHands; h++) {
+				hands[s][h] = new Hand();
+				outcomes[s][h] = Outcome.NONE;
+			}
+			handCount[s] = 1;
+			accounts[s] = ledger.open(minor(playerMoney));
+		}
+	}
+
+	/**
+	 * Places a bet for seat 0.
+	 * @see #bet(int, int)
+	 */
+	public void bet(int amount) {
+		bet(0, amount);
+	}
+
+	/**
+	 * Places a bet on the current round. The bet is taken from the seat's money.
+	 * A seat may bet before the deal, or after it until the seat first acts;
+	 * a seat that does not want to play the round bets 0.
+	 * @param seat the seat betting.
+	 * @param amount the amount to bet.
+	 * @throws IllegalArgumentException if the amount is negative or more than the seat has.
+	 * @throws IllegalStateException if the seat already bet this round, has
+	 *         already acted on its cards, or was settled while other seats
+	 *         are still playing.
+	 */
+	public void bet(int seat, int amount) {
+		long start = startTiming(Metrics.BET);
+		if (betPlaced[seat]) {
+			throw new IllegalStateException("bet already placed");
+		}
+		if (cardsDealt && !inRound[seat]) {
+			throw new IllegalStateException("seat " + seat + " must wait for the round to end");
+		}
+		if (cardsDealt && (stayed[seat] || actionCount[seat] > 0)) {
+			throw new IllegalStateException("seat " + seat + " has already acted this round");
+		}
+		if (amount < 0) {
+			throw new IllegalArgumentException("negative bet: " + amount);
+		}
+
+		ledger.stake(accounts[seat], minor(amount));
+		betAmount[seat] += amount;
+		handBet[seat][0] += amount;
+		roundBet[seat] += minor(amount);
+		betPlaced[seat] = true;
+
+		if (inRound[seat] && !insuranceOpen) {
+			checkNaturals(seat);
+			advance();
+		}
+		stopTiming(Metrics.BET, start);
+	}
+
+	/**
+	 * Starts a new round: clears the hands and flags and deals two cards
+	 * each to every seat and the dealer.
+	 */
+	public void deal() {
+		long start = startTiming(Metrics.DEAL);
+		dealerHand.clear();
+		for (int s = 0; s < seats; s++) {
+			// hands split off are set up when they are made
+			hands[s][0].clear();
+			outcomes[s][0] = Outcome.NONE;
+			handFlags[s][0] = 0;
+			handBet[s][0] = betAmount[s];
+			handCount[s] = 1;
+			current[s] = 0;
+			stayed[s] = false;
+			gameOver[s] = false;
+			inRound[s] = true;
+			insurance[s] = 0;
+			insuranceDecided[s] = false;
+		}
+
+		shoe.startRound();
+		for (int pass = 0; pass < 2; pass++) {
+			for (int s = 0; s < seats; s++) {
+				hands[s][0].add(shoe.dealOrdinal());
+			}
+			dealerHand.add(shoe.dealOrdinal());
+		}
+
+		if (cheaterDetected) {
+			rigDealer();
+		}
+
+		cardsDealt = true;
+		turn = 0;
+		// the dealer looks at the hole card only once every seat has decided on insurance
+		insuranceOpen = rules.insurance() && dealerUpCard().pointValue() == 1;
+		if (!insuranceOpen) {
+			for (int s = 0; s < seats; s++) {
+				if (betPlaced[s]) {
+					checkNaturals(s);
+				}
+			}
+		}
+		advance();
+		stopTiming(Metrics.DEAL, start);
+	}
+
+	/**
+	 * Gives the dealer an ace in the hole and a ten up. When every card of
+	 * a value is already on the table, the card the dealer was dealt stays.
+	 */
+	private void rigDealer() {
+		Card ace = shoe.deal(1);
+		Card ten = shoe.deal(10);
+		int hole = ace != null ? ace.ordinal() : dealerHand.ordinalAt(0);
+		int up = ten != null ? ten.ordinal() : dealerHand.ordinalAt(1);
+		dealerHand.clear();
+		dealerHand.add(hole);
+		dealerHand.add(up);
+	}
+
+	/**
+	 * Decides on insurance for seat 0.
+	 * @see #insure(int, boolean)
+	 */
+	public void insure(boolean take) {
+		insure(0, take);
+	}
+
+	/**
+	 * Takes or declines insurance, a side bet of half the seat's bet that
+	 * pays 2:1 if the dealer holds a natural. Once every seat has decided,
+	 * the dealer looks at the hole card: insurance is settled, then every
+	 * natural, and play begins.
+	 * @param seat the seat deciding.
+	 * @param take true to take insurance.
+	 * @throws IllegalStateException if insurance is not offered to the seat:
+	 *         it has no bet, or has already decided.
+	 * @throws IllegalArgumentException if the seat cannot cover the stake.
+	 */
+	public void insure(int seat, boolean take) {
+		if (!isInsuranceOffered(seat)) {
+			throw new IllegalStateException("insurance is not offered to seat " + seat);
+		}
+		if (take) {
+			long stake = minor(betAmount[seat]) / 2;
+			ledger.stake(accounts[seat], stake);
+			insurance[seat] = stake;
+			roundBet[seat] += stake;
+		}
+		record(seat, take ? ACTION_INSURE : ACTION_NO_INSURANCE);
+		insuranceDecided[seat] = true;
+
+		for (int s = 0; s < seats; s++) {
+			if (inRound[s] && !insuranceDecided[s]) {
+				return;
+			}
+		}
+		insuranceOpen = false;
+		boolean dealerNatural = dealerHand.isBlackjack();
+		for (int s = 0; s < seats; s++) {
+			if (insurance[s] > 0 && dealerNatural) {
+				pay(s, rules.payout(Rules.INSURANCE, insurance[s]));
+			}
+			if (betPlaced[s]) {
+				checkNaturals(s);
+			}
+		}
+		advance();
+	}
+
+	/**
+	 * Deals one more card to seat 0.
+	 * @see #hit(int)
+	 */
+	public void hit() {
+		hit(0);
+	}
+
+	/**
+	 * Deals one more card to the hand a seat is playing.
+	 * Going over 21 loses the bet; reaching 21 wins it, or ends the hand if
+	 * the rules have a 21 stand.
+	 * @param seat the seat whose turn it is.
+	 * @throws IllegalStateException if it is not that seat's turn, it has no bet, or the
+	 *         hand is a split ace that cannot be hit.
+	 */
+	public void hit(int seat) {
+		checkInPlay(seat);
+		if ((handFlags[seat][current[seat]] & HAND_SPLIT_ACES) != 0 && !rules.hitSplitAces()) {
+			throw new IllegalStateException("split aces cannot be hit");
+		}
+		long start = startTiming(Metrics.HIT);
+		record(seat, ACTION_HIT);
+		if (drawCard(seat)) {
+			nextHand(seat);
+		}
+		stopTiming(Metrics.HIT, start);
+	}
+
+	/**
+	 * Ends seat 0's turn.
+	 * @see #stand(int)
+	 */
+	public void stand() {
+		stand(0);
+	}
+
+	/**
+	 * Ends the hand a seat is playing, and the seat's turn if it was the
+	 * last. Once every seat has finished, plays out the dealer's hand and
+	 * settles the bets.
+	 * @param seat the seat whose turn it is.
+	 * @throws IllegalStateException if it is not that seat's turn or it has no bet.
+	 */
+	public void stand(int seat) {
+		checkInPlay(seat);
+		long start = startTiming(Metrics.STAND);
+		record(seat, ACTION_STAND);
+		nextHand(seat);
+		stopTiming(Metrics.STAND, start);
+	}
+
+	/**
+	 * Doubles seat 0's hand.
+	 * @see #doubleDown(int)
+	 */
+	public void doubleDown() {
+		doubleDown(0);
+	}
+
+	/**
+	 * Doubles the bet on the hand a seat is playing, which then takes
+	 * exactly one more card.
+	 * @param seat the seat whose turn it is.
+	 * @throws IllegalStateException if it is not that seat's turn, it has no bet, or the
+	 *         rules do not allow the hand to double.
+	 * @throws IllegalArgumentException if the seat cannot cover the stake.
+	 */
+	public void doubleDown(int seat) {
+		checkInPlay(seat);
+		if (!canDouble(seat)) {
+			throw new IllegalStateException("the hand cannot double");
+		}
+		int h = current[seat];
+		stakeAgain(seat, handBet[seat][h]);
+		handBet[seat][h] *= 2;
+		handFlags[seat][h] |= HAND_DOUBLED;
+		record(seat, ACTION_DOUBLE);
+		drawCard(seat);
+		nextHand(seat);
+	}
+
+	/**
+	 * Splits seat 0's pair.
+	 * @see #split(int)
+	 */
+	public void split() {
+		split(0);
+	}
+
+	/**
+	 * Splits the pair a seat is playing into two hands, each with the
+	 * original bet. The hand being played is dealt its second card at once,
+	 * the one split off when play reaches it.
+	 * @param seat the seat whose turn it is.
+	 * @throws IllegalStateException if it is not that seat's turn, it has no bet, or the
+	 *         rules do not allow the hand to split.
+	 * @throws IllegalArgumentException if the seat cannot cover the stake.
+	 */
+	public void split(int seat) {
+		checkInPlay(seat);
+		if (!canSplit(seat)) {
+			throw new IllegalStateException("the hand cannot split");
+		}
+		int h = current[seat];
+		int n = handCount[seat]++;
+		stakeAgain(seat, handBet[seat][h]);
+		handBet[seat][n] = handBet[seat][h];
+		Hand hand = hands[seat][h];
+		hands[seat][n].clear();
+		hands[seat][n].add(hand.removeLast());
+		outcomes[seat][n] = Outcome.NONE;
+		handFlags[seat][n] = 0;
+		if (Card.isAce(hand.ordinalAt(0))) {
+			handFlags[seat][h] |= HAND_SPLIT_ACES;
+			handFlags[seat][n] |= HAND_SPLIT_ACES;
+		}
+		record(seat, ACTION_SPLIT);
+		if (drawCard(seat)) {
+			nextHand(seat);
+		}
+	}
+
+	/**
+	 * Gives up seat 0's hand.
+	 * @see #surrender(int)
+	 */
+	public void surrender() {
+		surrender(0);
+	}
+
+	/**
+	 * Gives up a seat's hand before acting on it, for half the bet back.
+	 * @param seat the seat whose turn it is.
+	 * @throws IllegalStateException if it is not that seat's turn, it has no bet, or the
+	 *         rules do not allow the hand to surrender.
+	 */
+	public void surrender(int seat) {
+		checkInPlay(seat);
+		if (!canSurrender(seat)) {
+			throw new IllegalStateException("the hand cannot surrender");
+		}
+		record(seat, ACTION_SURRENDER);
+		settleHand(seat, 0, Rules.SURRENDER, Outcome.SURRENDER);
+		nextHand(seat);
+	}
+
+	/** @return true if seat 0 may hit. */
+	public boolean canHit() {
+		return canHit(0);
+	}
+
+	/** @return true if it is a seat's turn, it has bet, and its hand may take another card. */
+	public boolean canHit(int seat) {
+		return isPlaying(seat) && ((handFlags[seat][current[seat]] & HAND_SPLIT_ACES) == 0 || rules.hitSplitAces());
+	}
+
+	/** @return true if seat 0 may double. */
+	public boolean canDouble() {
+		return canDouble(0);
+	}
+
+	/**
+	 * Decides whether a seat may double: its hand holds its first two
+	 * cards, the rules allow the total to double, after a split if it was
+	 * split, and the seat can cover the stake.
+	 * @param seat the seat.
+	 * @return true if <code>doubleDown</code> is allowed now.
+	 */
+	public boolean canDouble(int seat) {
+		if (!canHit(seat)) {
+			return false;
+		}
+		int h = current[seat];
+		Hand hand = hands[seat][h];
+		return hand.size() == 2 && rules.canDouble(hand.total(), hand.isSoft())
+			&& (handCount[seat] == 1 || rules.doubleAfterSplit())
+			&& ledger.balance(accounts[seat]) >= minor(handBet[seat][h]);
+	}
+
+	/** @return true if seat 0 may split. */
+	public boolean canSplit() {
+		return canSplit(0);
+	}
+
+	/**
+	 * Decides whether a seat may split: its hand is a pair of the same
+	 * point value, it holds fewer hands than the rules allow, split aces
+	 * may be split again if these are, and the seat can cover the stake.
+	 * @param seat the seat.
+	 * @return true if <code>split</code> is allowed now.
+	 */
+	public boolean canSplit(int seat) {
+		if (!isPlaying(seat) || handCount[seat] >= rules.maxHands()) {
+			return false;
+		}
+		int h = current[seat];
+		Hand hand = hands[seat][h];
+		return hand.size() == 2 && Card.points(hand.ordinalAt(0)) == Card.points(hand.ordinalAt(1))
+			&& ((handFlags[seat][h] & HAND_SPLIT_ACES) == 0 || rules.resplitAces())
+			&& ledger.balance(accounts[seat]) >= minor(handBet[seat][h]);
+	}
+
+	/** @return true if seat 0 may surrender. */
+	public boolean canSurrender() {
+		return canSurrender(0);
+	}
+
+	/** @return true if the rules offer surrender and a seat has not acted on the hand it was dealt. */
+	public boolean canSurrender(int seat) {
+		return rules.surrender() && isPlaying(seat) && handCount[seat] == 1 && hands[seat][0].size() == 2;
+	}
+
+	/** @return true while insurance is offered and seat 0 has not decided. */
+	public boolean isInsuranceOffered() {
+		return isInsuranceOffered(0);
+	}
+
+	/** @return true while insurance is offered and a seat that has bet on the round has not decided. */
+	public boolean isInsuranceOffered(int seat) {
+		return insuranceOpen && inRound[seat] && betPlaced[seat] && !insuranceDecided[seat];
+	}
+
+	/** @return true from a deal showing an ace, when the rules offer insurance, until every seat has decided. */
+	public boolean isInsuranceOpen() {
+		return insuranceOpen;
+	}
+
+	/** Takes the stake of a double or a split from a seat's money. */
+	private void stakeAgain(int seat, int amount) {
+		ledger.stake(accounts[seat], minor(amount));
+		betAmount[seat] += amount;
+		roundBet[seat] += minor(amount);
+	}
+
+	/**
+	 * Deals a card to the hand a seat is playing, settling it if it went
+	 * over or reached a winning 21.
+	 * @return true if the hand is over: settled, at 21, doubled, or a split
+	 *         ace that can neither hit nor split again.
+	 */
+	private boolean drawCard(int seat) {
+		int h = current[seat];
+		Hand hand = hands[seat][h];
+		hand.add(shoe.dealOrdinal());
+
+		if (hand.isBust()) {
+			settleHand(seat, h, Rules.LOSE, Outcome.PLAYER_BUST);
+			return true;
+		}
+		if (hand.total() == 21) {
+			if (rules.twentyOneWins()) {
+				settleHand(seat, h, Rules.WIN, Outcome.PLAYER_BLACKJACK);
+			}
+			return true;
+		}
+		return (handFlags[seat][h] & HAND_DOUBLED) != 0
+			|| ((handFlags[seat][h] & HAND_SPLIT_ACES) != 0 && !rules.hitSplitAces() && !canSplit(seat));
+	}
+
+	/**
+	 * Finishes the hand a seat is playing and moves to its next, dealing
+	 * that hand its second card. After the last, ends the seat's turn.
+	 */
+	private void nextHand(int seat) {
+		while (current[seat] + 1 < handCount[seat]) {
+			current[seat]++;
+			if (!drawCard(seat)) {
+				return;
+			}
+		}
+
+		stayed[seat] = true;
+		if (isSettled(seat)) {
+			endRound(seat);
+		}
+		advance();
+	}
+
+	/** @return true if every hand of a seat has been settled. */
+	private boolean isSettled(int seat) {
+		for (int h = 0; h < handCount[seat]; h++) {
+			if (outcomes[seat][h] == Outcome.NONE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the round once no seat is left to act.
+	 */
+	private void advance() {
+		if (cardsDealt && turn() < 0 && !insuranceOpen) {
+			finishRound();
+		}
+	}
+
+	/**
+	 * Plays the dealer, settles every hand that stood in one pass, and ends the round.
+	 */
+	private void finishRound() {
+		boolean standing = false;
+		for (int s = 0; s < seats; s++) {
+			standing |= !gameOver[s];
+		}
+
+		if (standing) {
+			long start = startTiming(Metrics.DEALER);
+			while (rules.dealerHits(dealerHand.hardTotal(), dealerHand.aces() > 0)) {
+				dealerHand.add(shoe.dealOrdinal());
+			}
+			int dealerTotal = dealerHand.total();
+			for (int s = 0; s < seats; s++) {
+				if (!gameOver[s]) {
+					Outcome[] outcome = outcomes[s];
+					for (int h = 0; h < handCount[s]; h++) {
+						if (outcome[h] == Outcome.NONE) {
+							settle(s, h, hands[s][h].total(), dealerTotal);
+						}
+					}
+					endRound(s);
+				}
+			}
+			stopTiming(Metrics.DEALER, start);
+		}
+
+		cardsDealt = false;
+		for (RoundListener l : listeners) {
+			l.roundEnded(this);
+		}
+		for (int s = 0; s < seats; s++) {
+			roundBet[s] = 0;
+			roundPayout[s] = 0;
+			actionCount[s] = 0;
+		}
+	}
+
+	/**
+	 * Pays out a hand's bet by comparing the final totals.
+	 * @param seat the seat.
+	 * @param hand the hand.
+	 * @param totalPlayerValue the hand's final total.
+	 * @param totalDealerValue the dealer's final total.
+	 */
+	private void settle(int seat, int hand, int totalPlayerValue, int totalDealerValue) {
+		int kind = rules.settle(totalPlayerValue, totalDealerValue);
+		Outcome outcome;
+
+		if (kind == Rules.PUSH) {
+			outcome = Outcome.PUSH;
+		} else if (kind == Rules.WIN) {
+			outcome = totalPlayerValue == 21 && rules.twentyOneWins()
+				? (totalDealerValue == 21 ? Outcome.PUSH : Outcome.PLAYER_BLACKJACK)
+				: totalDealerValue > 21 ? Outcome.DEALER_BUST : Outcome.PLAYER_WON;
+		} else {
+			outcome = totalDealerValue == 21 ? Outcome.DEALER_BLACKJACK : Outcome.DEALER_WON;
+		}
+
+		settleHand(seat, hand, kind, outcome);
+	}
+
+	/**
+	 * Settles a natural 21 on either side once the seat's bet and the cards
+	 * are both in, and the dealer has looked at the hole card.
+	 */
+	private void checkNaturals(int seat) {
+		if (handCount[seat] > 1) {
+			return;
+		}
+		int kind = Rules.naturals(hands[seat][0].isBlackjack(), dealerHand.isBlackjack());
+		if (kind >= 0) {
+			stayed[seat] = true;
+			// a natural pays what the rules say, exact in minor units
+			settleHand(seat, 0, kind, kind == Rules.NATURAL ? Outcome.PLAYER_BLACKJACK : Outcome.DEALER_BLACKJACK);
+			endRound(seat);
+		}
+	}
+
+	/**
+	 * Pays one of a seat's hands what the rules give for a kind of settlement.
+	 */
+	private void settleHand(int seat, int hand, int kind, Outcome outcome) {
+		int bet = handBet[seat][hand];
+		if (kind != Rules.LOSE) {
+			pay(seat, rules.payout(kind, minor(bet)));
+		}
+		betAmount[seat] -= bet;
+		handBet[seat][hand] = 0;
+		outcomes[seat][hand] = outcome;
+		handsSettled++;
+	}
+
+	private void endRound(int seat) {
+		gameOver[seat] = true;
+		inRound[seat] = false;
+		betPlaced[seat] = false;
+	}
+
+	/** Gives a seat money won or returned this round, in minor units. */
+	private void pay(int seat, long amount) {
+		ledger.pay(accounts[seat], amount);
+		roundPayout[seat] += amount;
+	}
+
+	/** @return an amount of chips in minor units. */
+	private static long minor(int chips) {
+		return chips * Ledger.MINOR_UNITS;
+	}
+
+	private void record(int seat, byte action) {
+		if (actionCount[seat] == actions[seat].length) {
+			actions[seat] = Arrays.copyOf(actions[seat], actionCount[seat] * 2);
+		}
+		actions[seat][actionCount[seat]++] = action;
+	}
+
+	/**
+	 * Reads the clock if the event about to happen is one of the few that are timed.
+	 * @param kind the kind of event, an index into <code>Metrics.ENGINE</code>.
+	 * @return the time now, or 0 if the event is not timed.
+	 */
+	private long startTiming(int kind) {
+		if (++sinceTimed < Metrics.SAMPLE) {
+			return 0;
+		}
+		sinceTimed = 0;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records a timed event's duration, standing for the SAMPLE events since
+	 * the last, and hands on the hands settled since then.
+	 * @param kind the kind of event.
+	 * @param start what <code>startTiming</code> returned.
+	 */
+	private void stopTiming(int kind, long start) {
+		if (start != 0) {
+			Metric metric = Metrics.ENGINE[kind];
+			metric.sample(System.nanoTime() - start);
+			metric.mark(Metrics.SAMPLE);
+			Metrics.ENGINE[Metrics.HANDS].mark(handsSettled);
+			handsSettled = 0;
+		}
+	}
+
+	/** @return true if it is a seat's turn and it has a stake in the round. */
+	private boolean isPlaying(int seat) {
+		return turn() == seat && betPlaced[seat];
+	}
+
+	private void checkInPlay(int seat) {
+		if (!isPlaying(seat)) {
+			notInPlay(seat);
+		}
+	}
+
+	private void notInPlay(int seat) {
+		if (gameOver[seat] || !inRound[seat]) {
+			throw new IllegalStateException("no round in play");
+		}
+		if (insuranceOpen) {
+			throw new IllegalStateException("insurance is still open");
+		}
+		if (seat == turn()) {
+			throw new IllegalStateException("seat " + seat + " has no bet on the round");
+		}
+		throw new IllegalStateException("not seat " + seat + "'s turn");
+	}
+
+	/**
+	 * Finds the seat that acts next.
+	 * @return the first seat that has not finished its turn, or -1 if none
+	 *         or while insurance is open.
+	 */
+	public int turn() {
+		if (insuranceOpen) {
+			return -1;
+		}
+		// seats only ever finish during a round, so the search picks up where it left off
+		while (turn < seats && (stayed[turn] || !inRound[turn])) {
+			turn++;
+		}
+		return turn < seats ? turn : -1;
+	}
+
+	/**
+	 * Captures everything about the table: the rules, each seat's money,
+	 * bets, flags, insurance, decisions and hands, the dealer's hand and the
+	 * order of the shoe.
+	 * @return the snapshot, a few hundred bytes.
+	 */
+	public byte[] snapshot() {
+		int size = 50 + dealerHand.size() + shoe.deck().totalSize();
+		for (int s = 0; s < seats; s++) {
+			size += 46 + actionCount[s];
+			for (int h = 0; h < handCount[s]; h++) {
+				size += 7 + hands[s][h].size();
+			}
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(size);
+		out.putInt(SNAPSHOT_MAGIC);
+		out.put((byte) seats);
+		out.put((byte) ((cardsDealt ? 1 : 0) | (cheaterDetected ? 2 : 0) | (insuranceOpen ? 4 : 0)));
+		out.putShort((short) rules.code());
+		for (int s = 0; s < seats; s++) {
+			out.putLong(ledger.balance(accounts[s]));
+			out.putInt(betAmount[s]);
+			out.putLong(roundBet[s]);
+			out.putLong(roundPayout[s]);
+			out.putLong(insurance[s]);
+			out.put((byte) ((stayed[s] ? 1 : 0) | (gameOver[s] ? 2 : 0) | (inRound[s] ? 4 : 0) | (betPlaced[s] ? 8 : 0)
+				| (insuranceDecided[s] ? 16 : 0)));
+			out.put((byte) actionCount[s]);
+			out.put(actions[s], 0, actionCount[s]);
+			out.put((byte) handCount[s]);
+			out.put((byte) current[s]);
+			for (int h = 0; h < handCount[s]; h++) {
+				out.putInt(handBet[s][h]);
+				out.put((byte) outcomes[s][h].ordinal());
+				out.put(handFlags[s][h]);
+				hands[s][h].writeTo(out);
+			}
+		}
+		dealerHand.writeTo(out);
+		shoe.writeTo(out);
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	/**
+	 * Puts the table back as it was when a snapshot was taken.
+	 * Listeners are not told about a round that was already over.
+	 * @param snapshot a snapshot from <code>snapshot</code>.
+	 * @throws IllegalArgumentException if it is not a snapshot, or it is
+	 *         of a table with a different number of seats or decks, or other rules.
+	 */
+	public void restore(byte[] snapshot) {
+		ByteBuffer in = ByteBuffer.wrap(snapshot);
+		try {
+			if (in.getInt() != SNAPSHOT_MAGIC) {
+				throw new IllegalArgumentException("not a snapshot");
+			}
+			int written = in.get();
+			if (written != seats) {
+				throw new IllegalArgumentException("table of " + written + " seats, not " + seats);
+			}
+			int table = in.get();
+			Rules writtenRules = Rules.of(in.getShort() & 0xFFFF);
+			if (!writtenRules.equals(rules)) {
+				throw new IllegalArgumentException("table rules " + writtenRules + ", not " + rules);
+			}
+
+			// read everything before changing anything, so a bad snapshot leaves the table alone
+			int maxHands = rules.maxHands();
+			long[] balance = new long[seats];
+			int[] seatBet = new int[seats];
+			long[] bet = new long[seats];
+			long[] payout = new long[seats];
+			long[] insured = new long[seats];
+			int[] flags = new int[seats];
+			int[] count = new int[seats];
+			byte[][] decisions = new byte[seats][];
+			int[] seatHandCount = new int[seats];
+			int[] seatCurrent = new int[seats];
+			int[][] bets = new int[seats][maxHands];
+			Outcome[][] outcome = new Outcome[seats][maxHands];
+			byte[][] seatHandFlags = new byte[seats][maxHands];
+			Hand[][] seatHands = new Hand[seats][maxHands];
+			for (int s = 0; s < seats; s++) {
+				balance[s] = in.getLong();
+				if (balance[s] < 0) {
+					throw new IllegalArgumentException("negative balance: " + balance[s]);
+				}
+				seatBet[s] = in.getInt();
+				bet[s] = in.getLong();
+				payout[s] = in.getLong();
+				insured[s] = in.getLong();
+				flags[s] = in.get();
+				count[s] = in.get() & 0xFF;
+				decisions[s] = new byte[Math.max(8, count[s])];
+				in.get(decisions[s], 0, count[s]);
+				seatHandCount[s] = in.get();
+				seatCurrent[s] = in.get();
+				if (seatHandCount[s] < 1 || seatHandCount[s] > maxHands || seatCurrent[s] < 0 || seatCurrent[s] >= seatHandCount[s]) {
+					throw new IllegalArgumentException("hand " + seatCurrent[s] + " of " + seatHandCount[s]);
+				}
+				for (int h = 0; h < maxHands; h++) {
+					seatHands[s][h] = new Hand();
+					outcome[s][h] = Outcome.NONE;
+				}
+				for (int h = 0; h < seatHandCount[s]; h++) {
+					bets[s][h] = in.getInt();
+					int o = in.get();
+					if (o < 0 || o >= Outcome.values().length) {
+						throw new IllegalArgumentException("not an outcome: " + o);
+					}
+					outcome[s][h] = Outcome.values()[o];
+					seatHandFlags[s][h] = in.get();
+					seatHands[s][h].readFrom(in);
+				}
+			}
+			Hand dealer = new Hand();
+			dealer.readFrom(in);
+			shoe.readFrom(in);
+
+			for (int s = 0; s < seats; s++) {
+				ledger.deposit(accounts[s], balance[s] - ledger.balance(accounts[s]));
+				betAmount[s] = seatBet[s];
+				roundBet[s] = bet[s];
+				roundPayout[s] = payout[s];
+				insurance[s] = insured[s];
+				stayed[s] = (flags[s] & 1) != 0;
+				gameOver[s] = (flags[s] & 2) != 0;
+				inRound[s] = (flags[s] & 4) != 0;
+				betPlaced[s] = (flags[s] & 8) != 0;
+				insuranceDecided[s] = (flags[s] & 16) != 0;
+				actions[s] = decisions[s];
+				actionCount[s] = count[s];
+				handCount[s] = seatHandCount[s];
+				current[s] = seatCurrent[s];
+				handBet[s] = bets[s];
+				outcomes[s] = outcome[s];
+				handFlags[s] = seatHandFlags[s];
+				hands[s] = seatHands[s];
+			}
+			dealerHand = dealer;
+			cardsDealt = (table & 1) != 0;
+			cheaterDetected = (table & 2) != 0;
+			insuranceOpen = (table & 4) != 0;
+			turn = 0;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("snapshot cut short", e);
+		}
+	}
+
+	/** @return the number of seats at the table. */
+	public int seats() {
+		return seats;
+	}
+
+	/** @return the rules of the table. */
+	public Rules rules() {
+		return rules;
+	}
+
+	/**
+	 * Accesses the outcome of seat 0's last finished round.
+	 * @return the outcome, or NONE if the round is still being played.
+	 */
+	public Outcome outcome() {
+		return outcome(0);
+	}
+
+	/**
+	 * Accesses the outcome of a seat's last finished round: that of the
+	 * hand it was dealt, or the first of the hands split from it.
+	 * @param seat the seat.
+	 * @return the outcome, or NONE if the round is still being played.
+	 */
+	public Outcome outcome(int seat) {
+		return gameOver[seat] ? outcomes[seat][0] : Outcome.NONE;
+	}
+
+	/**
+	 * Accesses the outcome of one of a seat's hands.
+	 * @param seat the seat.
+	 * @param hand the hand, from 0 to <code>handCount(seat)</code> - 1.
+	 * @return the outcome, or NONE if the hand is not settled yet.
+	 */
+	public Outcome outcome(int seat, int hand) {
+		return outcomes[seat][hand];
+	}
+
+	/** @return the number of hands seat 0 holds this round, more than 1 once it splits. */
+	public int handCount() {
+		return handCount[0];
+	}
+
+	/** @return the number of hands a seat holds this round, more than 1 once it splits. */
+	public int handCount(int seat) {
+		return handCount[seat];
+	}
+
+	/** @return the index of the hand a seat is playing, or played last. */
+	public int currentHand(int seat) {
+		return current[seat];
+	}
+
+	/** @return the hand seat 0 is playing, or played last. Observers must not change it. */
+	public Hand playerHand() {
+		return playerHand(0);
+	}
+
+	/** @return the hand a seat is playing, or played last. Observers must not change it. */
+	public Hand playerHand(int seat) {
+		return hands[seat][current[seat]];
+	}
+
+	/**
+	 * Accesses one of a seat's hands. Observers must not change it.
+	 * @param seat the seat.
+	 * @param hand the hand, from 0 to <code>handCount(seat)</code> - 1.
+	 * @return the hand.
+	 */
+	public Hand playerHand(int seat, int hand) {
+		return hands[seat][hand];
+	}
+
+	/** @return the dealer's hand. Observers must not change it. */
+	public Hand dealerHand() {
+		return dealerHand;
+	}
+
+	/** @return the point total of the hand seat 0 is playing. */
+	public int playerTotal() {
+		return playerHand(0).total();
+	}
+
+	/** @return the point total of the hand a seat is playing. */
+	public int playerTotal(int seat) {
+		return playerHand(seat).total();
+	}
+
+	/** @return the point total of the dealer's hand. */
+	public int dealerTotal() {
+		return dealerHand.total();
+	}
+
+	/**
+	 * Counts the cards seat 0 has not seen: those left in the shoe,
+	 * plus the dealer's hole card until seat 0 stays.
+	 * @param counts filled with the number of unseen cards worth each
+	 *        point value, at index 1 (ace) to 10.
+	 */
+	public void unseenComposition(int[] counts) {
+		shoe.deck().composition(counts);
+		if (dealerHand.size() > 0 && !stayed[0]) {
+			counts[Card.points(dealerHand.ordinalAt(0))]++;
+		}
+	}
+
+	/**
+	 * Registers a listener to be told about every round settled.
+	 * @param listener the listener.
+	 */
+	public void addRoundListener(RoundListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	/** @return the amount seat 0 bet on the round being played, in minor units. */
+	public long roundBet() {
+		return roundBet[0];
+	}
+
+	/** @return the amount a seat bet on the round being played, doubles, splits and insurance included, in minor units. */
+	public long roundBet(int seat) {
+		return roundBet[seat];
+	}
+
+	/** @return the amount paid back to seat 0 on the round being played, stake included, in minor units. */
+	public long roundPayout() {
+		return roundPayout[0];
+	}
+
+	/** @return the amount paid back to a seat on the round being played, stake included, in minor units. */
+	public long roundPayout(int seat) {
+		return roundPayout[seat];
+	}
+
+	/** @return the number of decisions seat 0 has made this round. */
+	public int actionCount() {
+		return actionCount[0];
+	}
+
+	/** @return the number of decisions a seat has made this round. */
+	public int actionCount(int seat) {
+		return actionCount[seat];
+	}
+
+	/**
+	 * Accesses one of seat 0's decisions this round.
+	 * @param i the index of the decision, from 0 (the first).
+	 * @return one of the ACTION codes.
+	 */
+	public byte actionAt(int i) {
+		return actions[0][i];
+	}
+
+	/**
+	 * Accesses one of a seat's decisions this round, on every hand in turn.
+	 * @param seat the seat.
+	 * @param i the index of the decision, from 0 (the first).
+	 * @return one of the ACTION codes.
+	 */
+	public byte actionAt(int seat, int i) {
+		return actions[seat][i];
+	}
+	/** @return the dealer's face up card. */
+	public Card dealerUpCard() {
+		return dealerHand.cardAt(1);
+	}
+
+	/** @return the whole chips seat 0 has not bet. */
+	public int playerMoney() {
+		return playerMoney(0);
+	}
+
+	/** @return the whole chips a seat has not bet. */
+	public int playerMoney(int seat) {
+		return (int) (ledger.balance(accounts[seat]) / Ledger.MINOR_UNITS);
+	}
+
+	/** @return the money seat 0 has not bet, in minor units. */
+	public long playerBalance() {
+		return ledger.balance(accounts[0]);
+	}
+
+	/** @return the money a seat has not bet, in minor units. */
+	public long playerBalance(int seat) {
+		return ledger.balance(accounts[seat]);
+	}
+
+	/**
+	 * Sets seat 0's money, e.g. to start over after going bankrupt.
+	 * @param playerMoney the new amount of money.
+	 */
+	public void setPlayerMoney(int playerMoney) {
+		setPlayerMoney(0, playerMoney);
+	}
+
+	/**
+	 * Sets a seat's money, depositing or withdrawing the difference.
+	 * @param seat the seat.
+	 * @param playerMoney the new amount of money.
+	 */
+	public void setPlayerMoney(int seat, int playerMoney) {
+		setPlayerBalance(seat, minor(playerMoney));
+	}
+
+	/**
+	 * Sets a seat's money to an exact amount, depositing or withdrawing the difference.
+	 * @param seat the seat.
+	 * @param balance the new amount of money, in minor units.
+	 */
+	public void setPlayerBalance(int seat, long balance) {
+		ledger.deposit(accounts[seat], balance - ledger.balance(accounts[seat]));
+	}
+
+	/**
+	 * Adds to seat 0's money.
+	 * @param amount the amount to add.
+	 */
+	public void addMoney(int amount) {
+		ledger.deposit(accounts[0], minor(amount));
+	}
+
+	/** @return the ledger the seats' money is kept in. */
+	public Ledger ledger() {
+		return ledger;
+	}
+
+	/**
+	 * Withdraws every seat's money and closes their accounts, when the
+	 * table is done with. The table must not be played afterwards.
+	 */
+	public void closeAccounts() {
+		for (int s = 0; s < seats; s++) {
+			ledger.close(accounts[s]);
+		}
+	}
+
+	/** @return the amount seat 0 currently has bet. */
+	public int playerBetAmount() {
+		return betAmount[0];
+	}
+
+	/** @return the amount a seat currently has bet. */
+	public int playerBetAmount(int seat) {
+		return betAmount[seat];
+	}
+
+	/** @return true if seat 0 has finished its turn. */
+	public boolean isPlayerStayed() {
+		return stayed[0];
+	}
+
+	/** @return true if a seat has finished its turn. */
+	public boolean isPlayerStayed(int seat) {
+		return stayed[seat];
+	}
+
+	/** @return true if seat 0's round has been settled. */
+	public boolean isGameOver() {
+		return gameOver[0];
+	}
+
+	/** @return true if a seat's round has been settled. */
+	public boolean isGameOver(int seat) {
+		return gameOver[seat];
+	}
+
+	/** @return true if a bet from seat 0 is waiting on this round. */
+	public boolean isBetPlaced() {
+		return betPlaced[0];
+	}
+
+	/** @return true if a bet from a seat is waiting on this round. */
+	public boolean isBetPlaced(int seat) {
+		return betPlaced[seat];
+	}
+
+	/** @return true from the deal until every seat has been settled. */
+	public boolean isRoundInPlay() {
+		return cardsDealt;
+	}
+
+	/**
+	 * Rigs every following deal so the dealer holds blackjack.
+	 * @param cheaterDetected true to rig the deals.
+	 */
+	public void setCheaterDetected(boolean cheaterDetected) {
+		this.cheaterDetected = cheaterDetected;
+	}
+
+	/** @return the shoe this engine deals from. */
+	public Shoe shoe() {
+		return shoe;
+	}
+}
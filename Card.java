@@ -1,49 +1,146 @@
 /**
  * Card.java
- * 
+ *
  * <code>Card</code> represents a playing card.
+ * A card is identified by its ordinal, <code>rank * 4 + suit</code>,
+ * and the 52 cards are shared instances looked up with <code>of</code>.
+ * Everything else about a card is read from tables indexed by ordinal.
  */
-public class Card {
+public final class Card {
+
+	/** The number of ranks in a standard deck. */
+	public static final int RANK_COUNT = 13;
+	/** The number of suits in a standard deck. */
+	public static final int SUIT_COUNT = 4;
+	/** The number of distinct cards. */
+	public static final int COUNT = RANK_COUNT * SUIT_COUNT;
+
+	/** The rank index of an ace. */
+	public static final int ACE = 0;
+
+	/** The names of the ranks, by rank index. */
+	private static final String[] RANK_NAMES = {"ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "jack", "queen", "king"};
+	/** The names of the suits, by suit index. */
+	private static final String[] SUIT_NAMES = {"spades", "hearts", "diamonds", "clubs"};
+	/** The point values of the ranks, by rank index. Aces count 1 here. */
+	private static final int[] RANK_POINTS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10};
+	/** The letters used for the ranks and suits in image file names. */
+	private static final String[] RANK_KEYS = {"A", "2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K"};
+	private static final String[] SUIT_KEYS = {"S", "H", "D", "C"};
+
+	/** The point value of each card, by ordinal. */
+	private static final byte[] POINTS = new byte[COUNT];
+	/** The image key of each card, by ordinal, e.g. "QH". */
+	private static final String[] IMAGE_KEYS = new String[COUNT];
+	/** The name of each card, by ordinal, as <code>toString</code> gives it. */
+	private static final String[] NAMES = new String[COUNT];
+	/** The shared card instances, by ordinal. */
+	private static final Card[] CARDS = new Card[COUNT];
+
+	static {
+		for (int ordinal = 0; ordinal < COUNT; ordinal++) {
+			POINTS[ordinal] = (byte) RANK_POINTS[ordinal / SUIT_COUNT];
+			IMAGE_KEYS[ordinal] = RANK_KEYS[ordinal / SUIT_COUNT] + SUIT_KEYS[ordinal % SUIT_COUNT];
+			NAMES[ordinal] = RANK_NAMES[ordinal / SUIT_COUNT] + " of " + SUIT_NAMES[ordinal % SUIT_COUNT]
+				+ "(points value = " + POINTS[ordinal] + ").";
+			CARDS[ordinal] = new Card((byte) ordinal);
+		}
+	}
 
 	/**
-	 * String value that holds the suit of the card
+	 * byte value that holds rank * 4 + suit
 	 */
-	private String suit;
+	private final byte ordinal;
+
+
+   /**
+	 * Creates a new <code>Card</code> instance.
+	 * Only used to build the shared instances.
+	 *
+	 * @param ordinal  the ordinal of the card
+	 */
+	private Card(byte ordinal) {
+		this.ordinal = ordinal;
+	}
 
 	/**
-	 * String value that holds the rank of the card
+	 * Looks up the shared card for an ordinal.
+	 * @param ordinal the ordinal, <code>rank * 4 + suit</code>.
+	 * @return the card with that ordinal.
 	 */
-	private String rank;
+	public static Card of(int ordinal) {
+		return CARDS[ordinal];
+	}
 
 	/**
-	 * int value that holds the point value.
+	 * Looks up the shared card for a rank and suit name.
+	 * @param rank the rank name, e.g. "ace" or "10".
+	 * @param suit the suit name, e.g. "spades".
+	 * @return the card with that rank and suit.
+	 * @throws IllegalArgumentException if either name is unknown.
 	 */
-	private int pointValue;
+	public static Card of(String rank, String suit) {
+		return CARDS[ordinal(indexOf(RANK_NAMES, rank), indexOf(SUIT_NAMES, suit))];
+	}
 
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("unknown card name: " + name);
+	}
 
-   /**
-	 * Creates a new <code>Card</code> instance.
-	 *
-	 * @param cardRank  a <code>String</code> value
-	 *                  containing the rank of the card
-	 * @param cardSuit  a <code>String</code> value
-	 *                  containing the suit of the card
-	 * @param cardPointValue an <code>int</code> value
-	 *                  containing the point value of the card
+	/**
+	 * Computes the ordinal of a rank and suit.
+	 * @param rank the rank index, 0 (ace) to 12 (king).
+	 * @param suit the suit index, 0 to 3.
+	 * @return the ordinal.
 	 */
-	public Card(String cardRank, String cardSuit, int cardPointValue) {
-		this.rank = cardRank;
-		this.suit = cardSuit;
-		this.pointValue = cardPointValue;
+	public static int ordinal(int rank, int suit) {
+		return rank * SUIT_COUNT + suit;
 	}
 
+	/** @return the rank index of an ordinal. */
+	public static int rank(int ordinal) {
+		return ordinal / SUIT_COUNT;
+	}
+
+	/** @return the suit index of an ordinal. */
+	public static int suit(int ordinal) {
+		return ordinal % SUIT_COUNT;
+	}
+
+	/** @return the point value of an ordinal, with aces counted as 1. */
+	public static int points(int ordinal) {
+		return POINTS[ordinal];
+	}
+
+	/** @return the name of an ordinal's card, as <code>toString</code> gives it. */
+	public static String name(int ordinal) {
+		return NAMES[ordinal];
+	}
+
+	/** @return true if the ordinal is an ace. */
+	public static boolean isAce(int ordinal) {
+		return ordinal < SUIT_COUNT;
+	}
+
+	/**
+	 * Accesses this <code>Card's</code> ordinal.
+	 * @return this <code>Card's</code> ordinal.
+	 */
+	public int ordinal() {
+		return ordinal;
+	}
 
 	/**
 	 * Accesses this <code>Card's</code> suit.
 	 * @return this <code>Card's</code> suit.
 	 */
 	public String suit() {
-		return suit;
+		return SUIT_NAMES[suit(ordinal)];
    }
 
 	/**
@@ -51,7 +148,7 @@ public class Card {
 	 * @return this <code>Card's</code> rank.
 	 */
 	public String rank() {
-		return rank;
+		return RANK_NAMES[rank(ordinal)];
 	}
 
    /**
@@ -59,7 +156,23 @@ public class Card {
 	 * @return this <code>Card's</code> point value.
 	 */
 	public int pointValue() {
-		return pointValue;
+		return POINTS[ordinal];
+	}
+
+	/**
+	 * Determines if this <code>Card</code> is an ace.
+	 * @return true if this card is an ace.
+	 */
+	public boolean isAce() {
+		return isAce(ordinal);
+	}
+
+	/**
+	 * Accesses the key of this <code>Card's</code> image, e.g. "10D".
+	 * @return this <code>Card's</code> image key.
+	 */
+	public String imageKey() {
+		return IMAGE_KEYS[ordinal];
 	}
 
 	/** Compare this card with the argument.
@@ -69,11 +182,7 @@ public class Card {
 	 *         false otherwise.
 	 */
 	public boolean matches(Card otherCard) {
-		return (
-			rank == otherCard.rank() &&
-			suit == otherCard.suit() &&
-			pointValue == otherCard.pointValue()
-		);
+		return ordinal == otherCard.ordinal;
 	}
 
 	/**
@@ -88,6 +197,6 @@ public class Card {
 	 */
 	@Override
 	public String toString() {
-		return rank + " of " + suit + "(points value = " + pointValue + ").";
+		return NAMES[ordinal];
 	}
-}
\ No newline at end of file
+}
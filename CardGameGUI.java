@@ -1,4 +1,4 @@
-import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Graphics;
 import java.awt.Dimension;
 import java.awt.Font;
@@ -12,7 +12,8 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.JButton;
 import javax.swing.JLabel;
-import javax.swing.ImageIcon;
+import javax.swing.Icon;
+import javax.swing.Timer;
 import java.util.*;
 
 /**
@@ -36,11 +37,46 @@ public class CardGameGUI extends JFrame implements ActionListener {
 	private static final int BUTTON_LEFT = 0;
 	private static final int BUTTON_HEIGHT = 60;
 	private static final int BUTTON_WIDTH = 200;
+	/** The buttons for the rules' extra choices, in a row above hit and stay. */
+	private static final int SMALL_BUTTON_HEIGHT = 40;
+	private static final int SMALL_BUTTON_WIDTH = 140;
+
+	/** Time between the dealer's cards being turned over, in milliseconds. */
+	private static final int DEALER_DRAW_DELAY = 600;
+	/** Time between checks that the event thread is keeping up, in milliseconds. */
+	private static final int STALL_CHECK_DELAY = 100;
+
+	/** The system property giving the number of seats. Seat 0 is played here, the rest by basic strategy. */
+	public static final String SEATS_PROPERTY = "blackjack.seats";
+	/** What each of the other seats bets every round. */
+	private static final int SEAT_BET = 10;
+	/** How far each card of another seat's hand is from the one under it. */
+	private static final int SEAT_FAN = 30;
 	
-	private static final String[] RANKS = {"ace", "2", "3", "4", "5", "6", "7", "8", "9", "10", "jack", "queen", "king"};
-	private static final String[] SUITS = {"spades", "hearts", "diamonds", "clubs"};
-	private static final int[] POINT_VALUES = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 10, 10, 10};
-	private Deck deck = new Deck(RANKS, SUITS, POINT_VALUES);
+	/** The system property giving the table rules, as <code>Rules.parse</code> reads them, e.g. "casino". */
+	public static final String RULES_PROPERTY = "blackjack.rules";
+
+	/** The system property giving the seed of the shoe, so the same cards come out every time. */
+	public static final String SEED_PROPERTY = "blackjack.seed";
+	/** The system property naming a hand history to replay instead of playing; SEED_PROPERTY picks the shoe. */
+	public static final String REPLAY_PROPERTY = "blackjack.replay";
+	/** The log being replayed, or null when playing. */
+	private final Replay replay = openReplay();
+	/** Takes the next step of the replay. */
+	private Timer replayTimer;
+
+	/** The rules of the game, which this display observes. */
+	private BlackjackEngine engine = replay != null ? replay.engine()
+		: new BlackjackEngine(newShoe(), Integer.getInteger(SEATS_PROPERTY, 1), BlackjackEngine.STARTING_MONEY,
+			Rules.parse(System.getProperty(RULES_PROPERTY, "")));
+	/** Plays the other seats and gives the hint, for the table's rules. */
+	private BasicStrategy strategy = BasicStrategy.forRules(engine.rules());
+	/** Works out the dealer's chances for the hint, for the table's rules. */
+	private DealerOutcomes dealerOutcomes = new DealerOutcomes(engine.rules());
+	private int[] unseenCards = new int[11];
+	private double[] standChances = new double[3];
+	/** The card and button images, loaded once. */
+	private CardImages images = new CardImages();
 
 	/** The main panel containing the game components. */
 	private JPanel panel;
@@ -52,10 +88,20 @@ public class CardGameGUI extends JFrame implements ActionListener {
 	private JButton dealButton;
 	/** The Bet button. */
 	private JButton betButton;
+	/** The buttons for the choices the rules may allow. */
+	private JButton doubleButton;
+	private JButton splitButton;
+	private JButton surrenderButton;
+	private JButton insureButton;
+	private JButton noInsuranceButton;
 	/** The card displays. */
-	private ArrayList<JLabel> dealerDisplayCards = new ArrayList<JLabel>();
+	private CardRow dealerDisplayCards = new CardRow(PADDING);
 	/** The card displays. */
-	private ArrayList<JLabel> playerDisplayCards = new ArrayList<JLabel>();
+	private CardRow playerDisplayCards = new CardRow(2*PADDING + CARD_HEIGHT);
+	/** The other seats' cards, fanned out in a row below the player's, by seat. */
+	private CardRow[] seatDisplayCards = new CardRow[engine.seats()];
+	/** The other seats' money and results, by seat. */
+	private JLabel[] seatLabels = new JLabel[engine.seats()];
 	/** The message displayed when the game is over */
 	private JLabel endGameMsg;
 	/** The message that displays the players money */
@@ -64,41 +110,147 @@ public class CardGameGUI extends JFrame implements ActionListener {
 	private JLabel playerTotalLabel;
 	/** The message that displays how much was bet */
 	private JLabel playerBetLabel;
+	/** The message that suggests hitting or staying */
+	private JLabel hintLabel;
+	/** The card count, shown when the table is clicked */
+	private JLabel countLabel;
 	/** The input box for the bet amount */
 	private JTextField betAmount;
-	/** The coordinates of the card displays. */
-	private ArrayList<Point> dealerCardCoords = new ArrayList<Point>();
-	private ArrayList<Point> playerCardCoords = new ArrayList<Point>();
-	/** arrays that hold the player and dealers cards */
-	private ArrayList<Card> dealerCards = new ArrayList<Card>();
-	private ArrayList<Card> playerCards = new ArrayList<Card>();
-	/** Game variables */
-	private boolean dealerBust = false;
-	private boolean playerBust = false;
-	private boolean dealerBlackjack = false;
-	private boolean playerBlackjack = false;
-	private boolean tieGame = false;
-	private boolean playerWon = false;
-	private boolean dealerWon = false;
-
-	private boolean playerStayed = false;
-	private boolean gameOver = false;
+	/** Display variables */
 	private boolean hideCards = true;
 	private boolean playerBankrupt = false;
 
-	private int playerMoney = 100;
-	private int playerBetAmount = 0;
-
 	private int cheatCounter = 0;
-	private boolean cheaterDetected = false;
+
+	/** Turns over the dealer's drawn cards one at a time after the player stays. */
+	private Timer dealerTimer;
+	/** How many of the dealer's cards are on the table while dealerTimer runs. */
+	private int dealerCardsShown = Integer.MAX_VALUE;
+	/** Ticks on the event thread; a tick that comes late means the thread was held up. */
+	private Timer stallTimer;
+	private long lastStallCheck;
+
+	/** Keeps the Hi-Lo count of every card dealt, for the count overlay. */
+	private CountTracker countTracker;
+	private boolean showCount = false;
+
+	/** The system property naming a file to append every round to. */
+	public static final String HISTORY_PROPERTY = "blackjack.history";
+	/** The hand history, or null if none was asked for. */
+	private HandHistory history;
+
+	/** Saves the table after every move so the game resumes where it was left. */
+	private SessionStore session = new SessionStore();
 
 
 	public CardGameGUI() {
+		countTracker = new CountTracker(engine.shoe().deck().totalSize(), CountingSystem.HI_LO);
+		engine.shoe().addDealListener(countTracker);
+		if (replay != null) {
+			hideCards = false;
+		} else {
+			openHistory();
+			// a seed asks for a new shoe, not the one the last session left
+			if (System.getProperty(SEED_PROPERTY) == null) {
+				restoreSession();
+			}
+		}
+
+		if (engine.seats() > 1) {
+			DEFAULT_HEIGHT += CARD_HEIGHT + PADDING;
+		}
 		initDisplay();
 		setDefaultCloseOperation(EXIT_ON_CLOSE);
+		addWindowListener(new java.awt.event.WindowAdapter() {
+			@Override
+			public void windowClosing(java.awt.event.WindowEvent e) {
+				if (replay == null) {
+					session.save(engine);
+				}
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(new Thread(session::close));
 		repaint();
 	}
 
+	/**
+	 * Makes the shoe, from the seed in SEED_PROPERTY if it is set.
+	 */
+	private static Shoe newShoe() {
+		Long seed = Long.getLong(SEED_PROPERTY);
+		if (seed == null) {
+			return new Shoe();
+		}
+		return new Shoe(Shoe.DEFAULT_DECKS, Shoe.DEFAULT_PENETRATION, seed);
+	}
+
+	/**
+	 * Opens the hand history named by REPLAY_PROPERTY, if it is set, for
+	 * replaying the shoe SEED_PROPERTY names, or else the first in the log.
+	 * @return the replay, or null to play instead.
+	 */
+	private static Replay openReplay() {
+		String path = System.getProperty(REPLAY_PROPERTY);
+		if (path == null) {
+			return null;
+		}
+		try {
+			HandHistoryReader log = new HandHistoryReader(java.nio.file.Paths.get(path));
+			java.util.Map<Long, long[]> shoes = Replay.shoes(log);
+			Long seed = Long.getLong(SEED_PROPERTY);
+			long[] records = seed != null ? shoes.get(seed) : shoes.values().stream().findFirst().orElse(null);
+			if (records == null) {
+				System.err.println("no shoe to replay in " + path);
+				return null;
+			}
+			return new Replay(log, records);
+		} catch (java.io.IOException | IllegalArgumentException e) {
+			System.err.println("replay disabled: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Puts the table back as it was when the game was last closed, if it can.
+	 */
+	private void restoreSession() {
+		try {
+			if (!session.restore(engine)) {
+				return;
+			}
+		} catch (java.io.IOException | IllegalArgumentException e) {
+			System.err.println("starting a new session: " + e);
+			return;
+		}
+		hideCards = !engine.isBetPlaced() && !engine.isGameOver();
+		playerBankrupt = hideCards && engine.playerMoney() <= 0;
+	}
+
+	/**
+	 * Starts appending rounds to the file named by HISTORY_PROPERTY, if it is set.
+	 * The rounds still buffered are written when the program exits.
+	 */
+	private void openHistory() {
+		String path = System.getProperty(HISTORY_PROPERTY);
+		if (path == null) {
+			return;
+		}
+		try {
+			history = new HandHistory(java.nio.file.Paths.get(path));
+		} catch (java.io.IOException e) {
+			System.err.println("hand history disabled: " + e);
+			return;
+		}
+		engine.addRoundListener(history);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				history.close();
+			} catch (java.io.IOException e) {
+				System.err.println("hand history not saved: " + e);
+			}
+		}));
+	}
+
 	/**
 	 * Run the game.
 	 */
@@ -108,17 +260,53 @@ public class CardGameGUI extends JFrame implements ActionListener {
 				setVisible(true);
 			}
 		});
-		dealCards();
+		if (replay != null) {
+			replayTimer.start();
+		} else if (engine.playerHand().size() == 0) {
+			engine.deal();
+			seatBets();
+		}
 		initCardPositions();
 		repaint();
 	}
 
 	/**
-	 * Draw the display (cards and messages).
+	 * Draw the display (cards and messages), timing how long it takes.
 	 */
 	public void repaint() {
+		long start = System.nanoTime();
+		updateDisplay();
+		Metrics.REPAINT.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Lays out the window to fit its contents, timing how long it takes.
+	 */
+	@Override
+	public void pack() {
+		long start = System.nanoTime();
+		super.pack();
+		Metrics.PACK.record(System.nanoTime() - start);
+	}
+
+	private void updateDisplay() {
+		Hand dealerCards = engine.dealerHand();
+		Hand playerCards = engine.playerHand();
+		boolean gameOver = engine.isGameOver();
+		boolean playerStayed = engine.isPlayerStayed();
+		int playerMoney = engine.playerMoney();
+		int playerBetAmount = engine.playerBetAmount();
+		boolean dealerPlaying = dealerTimer.isRunning();
+
 		// update button visibility
-		if (gameOver) {
+		if (dealerPlaying || replay != null) {
+			dealButton.setVisible(false);
+			stayButton.setVisible(false);
+			hitButton.setVisible(false);
+			betButton.setVisible(false);
+			betAmount.setVisible(false);
+			playerTotalLabel.setVisible(true);
+		} else if (gameOver) {
 			dealButton.setVisible(true);
 			stayButton.setVisible(false);
 			hitButton.setVisible(false);
@@ -161,70 +349,42 @@ public class CardGameGUI extends JFrame implements ActionListener {
 			betAmount.setBounds(buttonSpacing2, DEFAULT_HEIGHT-BUTTON_HEIGHT-PADDING, BUTTON_WIDTH, BUTTON_HEIGHT);
 		}
 
-		if (hideCards) {
-			// dealers cards
-			if (dealerDisplayCards.size() != 0) {
-				if (playerStayed) {
-					String cardImageFileName = imageFileName(null);
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(0).setIcon(icon);
-					dealerDisplayCards.get(0).setVisible(true);
-				} else {
-					String cardImageFileName = imageFileName(null);
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(0).setIcon(icon);
-					dealerDisplayCards.get(0).setVisible(true);
-				}
-
-				for (int i = 1; i < dealerCards.size(); i++) {
-					String cardImageFileName = imageFileName(null);
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(i).setIcon(icon);
-					dealerDisplayCards.get(i).setVisible(true);
-				}
-			}
-
-			// player cards
-			if (playerDisplayCards.size() != 0) {
-				for (int i = 0; i < playerCards.size(); i++) {
-					String cardImageFileName = imageFileName(null);
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					playerDisplayCards.get(i).setIcon(icon);
-					playerDisplayCards.get(i).setVisible(true);
-				}
+		// the rules' extra choices, while the player can act; insurance is decided in place of hit and stay
+		boolean insuring = hitButton.isVisible() && engine.isInsuranceOffered();
+		boolean acting = hitButton.isVisible() && !insuring;
+		hitButton.setVisible(acting && engine.canHit());
+		stayButton.setVisible(acting);
+		doubleButton.setVisible(acting && engine.canDouble());
+		splitButton.setVisible(acting && engine.canSplit());
+		surrenderButton.setVisible(acting && engine.canSurrender());
+		insureButton.setVisible(insuring && engine.playerBalance() * 2 >= engine.playerBetAmount() * Ledger.MINOR_UNITS);
+		noInsuranceButton.setVisible(insuring);
+
+		int choiceY = DEFAULT_HEIGHT - BUTTON_HEIGHT - PADDING - SMALL_BUTTON_HEIGHT - minSpacing;
+		int choiceX = (DEFAULT_WIDTH - 3 * SMALL_BUTTON_WIDTH - 2 * minSpacing) / 2;
+		doubleButton.setBounds(choiceX, choiceY, SMALL_BUTTON_WIDTH, SMALL_BUTTON_HEIGHT);
+		splitButton.setBounds(choiceX + SMALL_BUTTON_WIDTH + minSpacing, choiceY, SMALL_BUTTON_WIDTH, SMALL_BUTTON_HEIGHT);
+		surrenderButton.setBounds(choiceX + 2 * (SMALL_BUTTON_WIDTH + minSpacing), choiceY, SMALL_BUTTON_WIDTH, SMALL_BUTTON_HEIGHT);
+		insureButton.setBounds(stayButton.getBounds());
+		noInsuranceButton.setBounds(hitButton.getBounds());
+
+		// dealers cards
+		for (int i = 0; i < dealerCardsShown(); i++) {
+			if (hideCards || (i == 0 && !playerStayed)) {
+				dealerDisplayCards.set(i, images.back());
+			} else {
+				dealerDisplayCards.set(i, images.of(dealerCards.cardAt(i)));
 			}
-		} else {
-			// dealers cards
-			if (dealerDisplayCards.size() != 0) {
-				if (playerStayed) {
-					String cardImageFileName = imageFileName(dealerCards.get(0));
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(0).setIcon(icon);
-					dealerDisplayCards.get(0).setVisible(true);
-				} else {
-					String cardImageFileName = imageFileName(null);
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(0).setIcon(icon);
-					dealerDisplayCards.get(0).setVisible(true);
-				}
+		}
 
-				for (int i = 1; i < dealerCards.size(); i++) {
-					String cardImageFileName = imageFileName(dealerCards.get(i));
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					dealerDisplayCards.get(i).setIcon(icon);
-					dealerDisplayCards.get(i).setVisible(true);
-				}
-			}
+		// player cards
+		showHands(playerDisplayCards, 0);
 
-			// player cards
-			if (playerDisplayCards.size() != 0) {
-				for (int i = 0; i < playerCards.size(); i++) {
-					String cardImageFileName = imageFileName(playerCards.get(i));
-					ImageIcon icon = new ImageIcon(cardImageFileName);
-					playerDisplayCards.get(i).setIcon(icon);
-					playerDisplayCards.get(i).setVisible(true);
-				}
-			}
+		// other seats' cards
+		for (int s = 1; s < engine.seats(); s++) {
+			showHands(seatDisplayCards[s], s);
+			String result = dealerPlaying || hideCards ? "" : seatResult(engine.outcome(s));
+			seatLabels[s].setText("Seat " + (s + 1) + "  $" + Ledger.format(engine.playerBalance(s)) + "  " + result);
 		}
 
 		if (playerMoney == 0) {
@@ -233,30 +393,43 @@ public class CardGameGUI extends JFrame implements ActionListener {
 			endGameMsg.setVisible(true);
 		}
 		
-		if (playerBlackjack && !tieGame) {
-			endGameMsg.setText("Blackjack!");
-			endGameMsg.setForeground(Color.GREEN);
-		} else if (dealerBlackjack && !tieGame) {
-			endGameMsg.setText("Dealer Blackjack");
-			endGameMsg.setForeground(Color.RED);
-		} else if (tieGame) {
-			endGameMsg.setText("Tie Game");
-			endGameMsg.setForeground(Color.BLACK);
-		} else if (playerBust && !tieGame) {
-			endGameMsg.setText("You busted");
-			endGameMsg.setForeground(Color.RED);
-		} else if (dealerBust && !tieGame) {
-			endGameMsg.setText("Dealer busted!");
-			endGameMsg.setForeground(Color.GREEN);
-		} else if (playerWon) {
-			endGameMsg.setText("You won!");
-			endGameMsg.setForeground(Color.GREEN);
-		} else if (dealerWon) {
-			endGameMsg.setText("Dealer won");
-			endGameMsg.setForeground(Color.RED);
-		} else {
-			endGameMsg.setText("");
-			endGameMsg.setForeground(Color.BLACK);
+		// the result is not shown until the dealer's cards have all been turned over
+		switch (dealerPlaying ? BlackjackEngine.Outcome.NONE : engine.outcome()) {
+			case PLAYER_BLACKJACK:
+				endGameMsg.setText("Blackjack!");
+				endGameMsg.setForeground(Color.GREEN);
+				break;
+			case DEALER_BLACKJACK:
+				endGameMsg.setText("Dealer Blackjack");
+				endGameMsg.setForeground(Color.RED);
+				break;
+			case PUSH:
+				endGameMsg.setText("Tie Game");
+				endGameMsg.setForeground(Color.BLACK);
+				break;
+			case PLAYER_BUST:
+				endGameMsg.setText("You busted");
+				endGameMsg.setForeground(Color.RED);
+				break;
+			case DEALER_BUST:
+				endGameMsg.setText("Dealer busted!");
+				endGameMsg.setForeground(Color.GREEN);
+				break;
+			case PLAYER_WON:
+				endGameMsg.setText("You won!");
+				endGameMsg.setForeground(Color.GREEN);
+				break;
+			case DEALER_WON:
+				endGameMsg.setText("Dealer won");
+				endGameMsg.setForeground(Color.RED);
+				break;
+			case SURRENDER:
+				endGameMsg.setText("You surrendered");
+				endGameMsg.setForeground(Color.RED);
+				break;
+			default:
+				endGameMsg.setText("");
+				endGameMsg.setForeground(Color.BLACK);
 		}
 
 		if (playerBankrupt) {
@@ -267,28 +440,58 @@ public class CardGameGUI extends JFrame implements ActionListener {
 			endGameMsg.setForeground(Color.RED);
 			endGameMsg.setVisible(true);
 
-			betButton.setIcon( new ImageIcon(".\\media\\icons\\restart.png") );
+			betButton.setIcon( images.icon("restart") );
 		}
 
 		endGameMsg.setVisible(true);
 
 		// update point counter test
-		playerTotalLabel.setText("Points: " + countHand(playerCards));
-		int textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.BOLD, 24) ).stringWidth("Points:   " + countHand(playerCards));
+		int playerTotal = engine.playerTotal();
+		playerTotalLabel.setText("Points: " + playerTotal);
+		int textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.BOLD, 24) ).stringWidth("Points:   " + playerTotal);
 		playerTotalLabel.setBounds((DEFAULT_WIDTH/2) - (textSize / 2), DEFAULT_HEIGHT-320, textSize, 30);
 
+		// update count overlay
+		countLabel.setVisible(showCount);
+		if (showCount) {
+			int count = visibleRunningCount();
+			countLabel.setText(String.format("%s  running %+d  true %+.1f",
+				countTracker.system(0), count, count / countTracker.decksRemaining()));
+			textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.PLAIN, 18) ).stringWidth(countLabel.getText());
+			countLabel.setBounds(minSpacing, 5, textSize, 30);
+		}
+
+		// update strategy hint while the player can act
+		hintLabel.setVisible(stayButton.isVisible());
+		if (stayButton.isVisible()) {
+			int upValue = engine.dealerUpCard().pointValue();
+			boolean soft = playerCards.isSoft();
+			String hint = surrenderButton.isVisible() && strategy.shouldSurrender(playerTotal, soft, upValue) ? "Hint: Surrender"
+				: splitButton.isVisible() && strategy.shouldSplit(Card.points(playerCards.ordinalAt(0)), upValue) ? "Hint: Split"
+				: doubleButton.isVisible() && strategy.shouldDouble(playerTotal, soft, upValue) ? "Hint: Double"
+				: hitButton.isVisible() && strategy.shouldHit(playerTotal, soft, upValue) ? "Hint: Hit" : "Hint: Stay";
+
+			engine.unseenComposition(unseenCards);
+			DealerOutcomes.standChances(engine.rules(), playerTotal, dealerOutcomes.distribution(upValue, unseenCards, true), standChances);
+			hintLabel.setText(hint + String.format("  (staying wins %.0f%%)", standChances[0] * 100));
+			textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.PLAIN, 18) ).stringWidth(hintLabel.getText());
+			hintLabel.setBounds((DEFAULT_WIDTH/2) - (textSize / 2), DEFAULT_HEIGHT-230, textSize, 30);
+		}
+
+		if (dealerPlaying) {
+			return;
+		}
+
 		// update player's money total text
-		playerMoneyLabel.setText("$" + playerMoney);
-		textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.BOLD, 24) ).stringWidth("$" + playerMoney);
+		String money = "$" + Ledger.format(engine.playerBalance());
+		playerMoneyLabel.setText(money);
+		textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.BOLD, 24) ).stringWidth(money);
 		playerMoneyLabel.setBounds((DEFAULT_WIDTH/2) - (textSize / 2), DEFAULT_HEIGHT-290, textSize, 30);
 
 		// update player's bet amount text
 		playerBetLabel.setText("Bet: $" + playerBetAmount);
 		textSize = panel.getGraphics().getFontMetrics( new Font("SansSerif", Font.BOLD, 24) ).stringWidth(("Bet: $" + playerBetAmount));
 		playerBetLabel.setBounds((DEFAULT_WIDTH/2) - (textSize / 2), DEFAULT_HEIGHT-260, textSize, 30);
-
-		pack();
-		panel.repaint();
 	}
 
 	/**
@@ -298,18 +501,31 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		panel = new JPanel() {
 			public void paintComponent(Graphics g) {
 				super.paintComponent(g);
+				dealerDisplayCards.paint(g);
+				playerDisplayCards.paint(g);
+				for (int s = 1; s < seatDisplayCards.length; s++) {
+					seatDisplayCards[s].paint(g);
+				}
 			}
 		};
 		
 		panel.addMouseListener(new MyMouseListener());
-		setTitle("Blackjack");
+
+		dealerTimer = new Timer(DEALER_DRAW_DELAY, this);
+		dealerTimer.setInitialDelay(DEALER_DRAW_DELAY);
+		replayTimer = new Timer(DEALER_DRAW_DELAY, this);
+		stallTimer = new Timer(STALL_CHECK_DELAY, this);
+		lastStallCheck = System.nanoTime();
+		stallTimer.start();
+		// the seed is all it takes to deal the same cards again
+		setTitle((replay != null ? "Blackjack replay, shoe " : "Blackjack, shoe ") + engine.shoe().seed());
 
 		this.setSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
 		panel.setLayout(null);
 		panel.setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
 
 		// stay button
-		stayButton = new JButton(new ImageIcon(".\\media\\icons\\stay.png"));
+		stayButton = new JButton(images.icon("stay"));
 		// stayButton.setText("");
 		panel.add(stayButton);
 		stayButton.setBounds(BUTTON_LEFT+20, DEFAULT_HEIGHT-BUTTON_HEIGHT-PADDING, BUTTON_WIDTH, BUTTON_HEIGHT);
@@ -318,7 +534,7 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		stayButton.setVisible(false);
 
 		// hit button
-		hitButton = new JButton(new ImageIcon(".\\media\\icons\\hit.png"));
+		hitButton = new JButton(images.icon("hit"));
 		// hitButton.setText("");
 		panel.add(hitButton);
 		hitButton.setBounds(DEFAULT_WIDTH-BUTTON_WIDTH-PADDING, DEFAULT_HEIGHT-BUTTON_HEIGHT-PADDING, BUTTON_WIDTH, BUTTON_HEIGHT);
@@ -327,7 +543,7 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		hitButton.setVisible(false);
 
 		// deal button
-		dealButton = new JButton(new ImageIcon(".\\media\\icons\\deal.png"));
+		dealButton = new JButton(images.icon("deal"));
 		// dealButton.setText("");
 		panel.add(dealButton);
 		dealButton.setBounds((DEFAULT_WIDTH/2)-(BUTTON_WIDTH/2), DEFAULT_HEIGHT-(BUTTON_HEIGHT * 2)-(PADDING * 2), BUTTON_WIDTH, BUTTON_HEIGHT);
@@ -336,7 +552,7 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		dealButton.setVisible(false);
 		
 		// bet button
-		betButton = new JButton(new ImageIcon(".\\media\\icons\\bet.png"));
+		betButton = new JButton(images.icon("bet"));
 		// betButton.setText("");
 		panel.add(betButton);
 		betButton.setBounds((DEFAULT_WIDTH/2)-(BUTTON_WIDTH/2), DEFAULT_HEIGHT-(BUTTON_HEIGHT * 2)-(PADDING * 2), BUTTON_WIDTH, BUTTON_HEIGHT);
@@ -344,6 +560,13 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		betButton.addActionListener(this);
 		betButton.setVisible(true);
 
+		// the choices the rules may allow
+		doubleButton = choiceButton("Double");
+		splitButton = choiceButton("Split");
+		surrenderButton = choiceButton("Surrender");
+		insureButton = choiceButton("Insure");
+		noInsuranceButton = choiceButton("No insurance");
+
 		// end game message
 		endGameMsg = new JLabel();
 		endGameMsg.setBounds(BUTTON_LEFT+PADDING, DEFAULT_HEIGHT-BUTTON_HEIGHT-(PADDING * 2), 200, 30);
@@ -380,6 +603,29 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		panel.add(playerBetLabel);
 		playerBetLabel.setVisible(true);
 
+		// hit or stay hint
+		hintLabel = new JLabel();
+		hintLabel.setFont(new Font("SansSerif", Font.PLAIN, 18));
+		hintLabel.setForeground(Color.DARK_GRAY);
+		panel.add(hintLabel);
+		hintLabel.setVisible(false);
+
+		// card count overlay
+		countLabel = new JLabel();
+		countLabel.setFont(new Font("SansSerif", Font.PLAIN, 18));
+		countLabel.setForeground(Color.DARK_GRAY);
+		panel.add(countLabel);
+		countLabel.setVisible(false);
+
+		// other seats
+		for (int s = 1; s < engine.seats(); s++) {
+			seatDisplayCards[s] = new CardRow(3*PADDING + 2*CARD_HEIGHT, SEAT_FAN);
+			seatLabels[s] = new JLabel();
+			seatLabels[s].setFont(new Font("SansSerif", Font.PLAIN, 16));
+			seatLabels[s].setForeground(Color.DARK_GRAY);
+			panel.add(seatLabels[s]);
+		}
+
 		// bet input amount
 		betAmount = new JTextField("Bet Amount", 10);
 		betAmount.setBounds((DEFAULT_WIDTH/2)-(BUTTON_WIDTH/2), DEFAULT_HEIGHT-BUTTON_HEIGHT-PADDING, BUTTON_WIDTH, BUTTON_HEIGHT);
@@ -393,138 +639,152 @@ public class CardGameGUI extends JFrame implements ActionListener {
 		panel.setVisible(true);
 	}
 
+	/**
+	 * Makes one of the buttons for the rules' extra choices, hidden until allowed.
+	 */
+	private JButton choiceButton(String text) {
+		JButton button = new JButton(text);
+		panel.add(button);
+		button.setFont(new Font("SansSerif", Font.BOLD, 16));
+		button.addActionListener(this);
+		button.setVisible(false);
+		return button;
+	}
+
 	private void initCardPositions() {
-		// remove old card positions from screen
-		if (dealerCardCoords.size() != 0) {
-			for (JLabel c : dealerDisplayCards) {
-				panel.remove(c);
-			}
-			for (JLabel c : playerDisplayCards) {
-				panel.remove(c);
-			}
+		int playerSlots = handSlots(0);
+
+		// drop slots for cards no longer on the table
+		dealerDisplayCards.setSize(dealerCardsShown());
+		playerDisplayCards.setSize(playerSlots);
+
+		// lay the other seats out side by side, each wide enough for a few cards
+		int seatX = minSpacing;
+		for (int s = 1; s < engine.seats(); s++) {
+			int size = handSlots(s);
+			seatDisplayCards[s].setSize(size);
+			seatDisplayCards[s].setLeft(seatX);
+			seatLabels[s].setBounds(seatX, 3*PADDING + 2*CARD_HEIGHT - 28, CARD_WIDTH + 3*SEAT_FAN, 24);
+			seatX += CARD_WIDTH + Math.max(3, size - 1) * SEAT_FAN + minSpacing;
 		}
 
-		// reset arrays that hold card positions and labels
-		dealerDisplayCards = new ArrayList<JLabel>();
-		playerDisplayCards = new ArrayList<JLabel>();
-		
-		dealerCardCoords = new ArrayList<Point>();
-		playerCardCoords = new ArrayList<Point>();
-		
 		// change window size to fit cards if needed
-		int dealerCardSpacing = (dealerCards.size() * CARD_WIDTH) + ((dealerCards.size() + 1) * minSpacing);
-		int playerCardSpacing = (playerCards.size() * CARD_WIDTH) + ((playerCards.size() + 1) * minSpacing);
-
-		if (dealerCardSpacing > playerCardSpacing) {
-			DEFAULT_WIDTH = dealerCardSpacing;
-			panel.setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
-		} else {
-			DEFAULT_WIDTH = playerCardSpacing;
-			panel.setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
+		int dealerCardSpacing = (dealerCardsShown() * CARD_WIDTH) + ((dealerCardsShown() + 1) * minSpacing);
+		int playerCardSpacing = (playerSlots * CARD_WIDTH) + ((playerSlots + 1) * minSpacing);
+		int width = Math.max(Math.max(dealerCardSpacing, playerCardSpacing), seatX);
+		if (!engine.rules().equals(Rules.DEFAULT)) {
+			// wide enough for hit and stay side by side, under the row of choices
+			width = Math.max(width, BUTTON_WIDTH * 2 + PADDING * 3);
 		}
 
-
-		for (int i = 0; i < dealerCards.size(); i++) {
-			dealerCardCoords.add( new Point( (minSpacing * (i+1)) + (CARD_WIDTH * i), PADDING ) );
-		}
-
-		for (int i = 0; i < playerCards.size(); i++) {
-			playerCardCoords.add( new Point( (minSpacing * (i+1)) + (CARD_WIDTH * i), 2*PADDING + CARD_HEIGHT ) );
+		if (width != DEFAULT_WIDTH) {
+			DEFAULT_WIDTH = width;
+			panel.setPreferredSize(new Dimension(DEFAULT_WIDTH, DEFAULT_HEIGHT));
+			pack();
 		}
+	}
 
-		// add cards to screen
-		for (int i = 0; i < dealerCardCoords.size(); i++) {
-			dealerDisplayCards.add(new JLabel());
-			panel.add(dealerDisplayCards.get(i));
-			dealerDisplayCards.get(i).setBounds(dealerCardCoords.get(i).x, dealerCardCoords.get(i).y,
-										CARD_WIDTH, CARD_HEIGHT);
+	/**
+	 * Puts a seat's cards in a row, its hands one after another with an
+	 * empty slot between, face down while the cards are hidden.
+	 */
+	private void showHands(CardRow row, int seat) {
+		int slot = 0;
+		for (int h = 0; h < engine.handCount(seat); h++) {
+			if (h > 0) {
+				row.set(slot++, null);
+			}
+			Hand cards = engine.playerHand(seat, h);
+			for (int i = 0; i < cards.size(); i++) {
+				row.set(slot++, hideCards ? images.back() : images.of(cards.cardAt(i)));
+			}
 		}
+	}
 
-		for (int i = 0; i < playerCardCoords.size(); i++) {
-			playerDisplayCards.add(new JLabel());
-			panel.add(playerDisplayCards.get(i));
-			playerDisplayCards.get(i).setBounds(playerCardCoords.get(i).x, playerCardCoords.get(i).y,
-										CARD_WIDTH, CARD_HEIGHT);
+	/**
+	 * The number of slots a seat's hands take in a row, with an empty one between hands.
+	 */
+	private int handSlots(int seat) {
+		int slots = engine.handCount(seat) - 1;
+		for (int h = 0; h < engine.handCount(seat); h++) {
+			slots += engine.playerHand(seat, h).size();
 		}
+		return slots;
 	}
 
-	private void dealCards() {
-		for (int i = 0; i < 4; i++) {
-			if (deck.size() < 8) {
-				deck.shuffle();
-			}
-
-			Card c = deck.deal();
+	/**
+	 * The running count of the cards the player has seen.
+	 * The tracker counts every card dealt, so cards still face down are taken back out.
+	 */
+	private int visibleRunningCount() {
+		CountingSystem system = countTracker.system(0);
+		Hand dealerCards = engine.dealerHand();
+		Hand playerCards = engine.playerHand();
+		int count = countTracker.runningCount(0);
 
-			if (i % 2 == 0) {
-				playerCards.add(c);
-			} else {
-				dealerCards.add(c);
+		for (int i = 0; i < dealerCards.size(); i++) {
+			if (hideCards || (i == 0 && !engine.isPlayerStayed()) || i >= dealerCardsShown()) {
+				count -= system.weight(dealerCards.ordinalAt(i));
 			}
 		}
-		
-		if (cheaterDetected) {
-			dealerCards.set(0, deck.deal(1));
-			dealerCards.set(1, deck.deal(10));
-		}
-
-		if (countHand(playerCards) == 21 && countHand(dealerCards) != 21) {
-			playerBlackjack = true;
-			playerStayed = true;
-			gameOver = true;
-			// player receives their bet back with an additional 1.5 times your bet
-			playerMoney += playerBetAmount;
-			playerMoney += (int) (playerBetAmount * 1.5);
-			playerBetAmount = 0;
-		} else if (countHand(playerCards) != 21 && countHand(dealerCards) == 21) {
-			dealerBlackjack = true;
-			playerStayed = true;
-			gameOver = true;
-			playerBetAmount = 0;
-		} else if (countHand(playerCards) == 21 && countHand(dealerCards) == 21) {
-			dealerBlackjack = true;
-			playerStayed = true;
-			gameOver = true;
-			playerMoney += playerBetAmount;
-			playerBetAmount = 0;
+		if (hideCards) {
+			for (int s = 0; s < engine.seats(); s++) {
+				Hand cards = engine.playerHand(s);
+				for (int i = 0; i < cards.size(); i++) {
+					count -= system.weight(cards.ordinalAt(i));
+				}
+			}
 		}
-
-		repaint();
+		return count;
 	}
 
-	private String imageFileName(Card c) {
-		String str = "C:\\users\\gothardta\\Documents\\BlackJack\\media\\cards\\";
-		if (c == null) {
-			return "C:\\users\\gothardta\\Documents\\BlackJack\\media\\cards\\gray_back.png";
+	/**
+	 * A short description of another seat's result.
+	 */
+	private static String seatResult(BlackjackEngine.Outcome outcome) {
+		switch (outcome) {
+			case PLAYER_BLACKJACK:
+				return "Blackjack";
+			case PLAYER_WON:
+			case DEALER_BUST:
+				return "Won";
+			case PUSH:
+				return "Push";
+			case SURRENDER:
+				return "Surrendered";
+			case NONE:
+				return "";
+			default:
+				return "Lost";
 		}
+	}
 
-		if (c.rank().equals("king")) {
-			str += "K";
-		} else if (c.rank().equals("queen")) {
-			str += "Q";
-		} else if (c.rank().equals("jack")) {
-			str += "J";
-		} else if (c.rank().equals("ace")) {
-			str += "A";
-		} else {
-			str += c.rank();
+	/**
+	 * The number of the dealer's cards to put on the table.
+	 */
+	private int dealerCardsShown() {
+		return Math.min(engine.dealerHand().size(), dealerCardsShown);
+	}
+
+	public void actionPerformed(ActionEvent e) {
+		if (e.getSource() == stallTimer) {
+			long now = System.nanoTime();
+			Metrics.EDT_STALL.record(now - lastStallCheck - STALL_CHECK_DELAY * 1_000_000L);
+			lastStallCheck = now;
+			return;
 		}
+		if (e.getSource() == replayTimer) {
+			replayActions();
 
-		if (c.suit().equals("spades")) {
-			str += "S";
-		} else if (c.suit().equals("hearts")) {
-			str += "H";
-		} else if (c.suit().equals("clubs")) {
-			str += "C";
-		} else if (c.suit().equals("diamonds")) {
-			str += "D";
+			repaint();
+			return;
 		}
-		str += ".png";
-		return str;
-	}
+		else if (e.getSource() == dealerTimer) {
+			dealerActions();
 
-	public void actionPerformed(ActionEvent e) {
-		if (e.getSource().equals(stayButton)) {
+			repaint();
+		}
+		else if (e.getSource().equals(stayButton)) {
 			getRootPane().setDefaultButton(stayButton);
 
 			stayActions();
@@ -551,17 +811,27 @@ public class CardGameGUI extends JFrame implements ActionListener {
 
 			repaint();
 		}
+		else if (e.getSource() == doubleButton || e.getSource() == splitButton || e.getSource() == surrenderButton
+				|| e.getSource() == insureButton || e.getSource() == noInsuranceButton) {
+			choiceActions(e.getSource());
+
+			repaint();
+		}
 		else {
 			return;
 		}
+
+		if (e.getSource() != dealerTimer) {
+			session.save(engine);
+		}
 	}
 
 	private void betActions() {
 		if (playerBankrupt) {
-			playerMoney = 100;
+			engine.setPlayerMoney(BlackjackEngine.STARTING_MONEY);
 			playerBankrupt = false;
 			endGameMsg.setVisible(false);
-			betButton.setIcon( new ImageIcon(".\\media\\icons\\bet.png") );
+			betButton.setIcon( images.icon("bet") );
 
 			endGameMsg.setBounds(BUTTON_LEFT+PADDING, DEFAULT_HEIGHT-BUTTON_HEIGHT-(PADDING * 2), 200, 30);
 			endGameMsg.setFont(new Font("SansSerif", Font.BOLD, 24));
@@ -572,19 +842,20 @@ public class CardGameGUI extends JFrame implements ActionListener {
 			repaint();
 		} else {
 			try {
-				playerBetAmount += Integer.parseInt(betAmount.getText());
+				int bet = Integer.parseInt(betAmount.getText());
 				
-				if (playerMoney - playerBetAmount < 0) {
+				if (engine.playerMoney() - bet < 0) {
 					betAmount.setText("Too much!");
-					playerBetAmount = 0;
-				} else if (playerBetAmount < 0) {
+				} else if (bet < 0) {
 					betAmount.setText("No Cheating!");
-					playerBetAmount = 0;
 				} else {
-					playerMoney -= playerBetAmount;
+					engine.bet(bet);
 					betButton.setVisible(false);
 					hideCards = false;
-					betAmount.setText("" + playerBetAmount);
+					betAmount.setText("" + bet);
+					if (engine.isPlayerStayed()) {
+						finishTurn();
+					}
 				}
 
 				repaint();
@@ -594,12 +865,9 @@ public class CardGameGUI extends JFrame implements ActionListener {
 						cheatCounter++;
 
 						if (cheatCounter >= 2) {
-							dealCards();
-							cheaterDetected = true;
-							playerMoney += Integer.parseInt(betAmount.getText().substring(5));
-						} else {
-							playerMoney += Integer.parseInt(betAmount.getText().substring(5));
+							engine.setCheaterDetected(true);
 						}
+						engine.addMoney(Integer.parseInt(betAmount.getText().substring(5)));
 					}
 				} catch (Exception f) {}
 
@@ -612,173 +880,204 @@ public class CardGameGUI extends JFrame implements ActionListener {
 
 	private void dealActions() {
 		repaint();
-		if (playerMoney <= 0) {
+		if (engine.playerMoney() <= 0) {
 			playerBankrupt = true;
 			repaint();
 		}
-		playerCards = new ArrayList<Card>();
-		dealerCards = new ArrayList<Card>();
 
-		dealCards();
+		engine.deal();
+		seatBets();
 
 		initCardPositions();
 
-		dealerBust = false;
-		playerBust = false;
-		dealerBlackjack = false;
-		playerBlackjack = false;
-		tieGame = false;
-		playerWon = false;
-		dealerWon = false;
-		playerStayed = false;
-
-		gameOver = false;
-		hideCards = true;
 		hideCards = true;
 		betButton.setVisible(true);
 	}
 
 	private void hitActions() {
-		playerCards.add(deck.deal());
-
-		if (countHand(playerCards) > 21) {
-			playerBust = true;
-			playerStayed = true;
-			gameOver = true;
-			playerBetAmount = 0;
-		} else if (countHand(playerCards) == 21) {
-			playerStayed = true;
-			playerBlackjack = true;
-			gameOver = true;
-			playerMoney += playerBetAmount * 2;
-			playerBetAmount = 0;
+		engine.hit();
+		if (engine.isPlayerStayed()) {
+			finishTurn();
 		}
 
 		initCardPositions();
 	}
 
 	private void stayActions() {
-		playerStayed = true;
-
-		// makes ace be counted last, makes it easier to count points
-		if (dealerCards.get(0).rank().equals("ace")) {
-			Card c = dealerCards.remove(0);
-			dealerCards.add(c);
-		}
-		if (playerCards.get(0).rank().equals("ace")) {
-			Card c = playerCards.remove(0);
-			playerCards.add(c);
-		}
-
-		int totalDealerValue = countHand(dealerCards);
-		if (totalDealerValue == 21) {
-			dealerBlackjack = true;
-			gameOver = true;
-		}
-		while (totalDealerValue <= 16) {
-			totalDealerValue = countHand(dealerCards);
-
-			if (totalDealerValue <= 16) {
-				dealerCards.add(deck.deal());
-				// doesn't work :(
-				// long start = System.currentTimeMillis();
-				// while (start + 1000 < System.currentTimeMillis()) {
-				// 	// give a break between drawing cards
-				// }
-				initCardPositions();
-				repaint();
-			}
-		}
+		engine.stand();
+		finishTurn();
 
-		int totalPlayerValue = countHand(playerCards);
+		initCardPositions();
+	}
 
-		if (totalPlayerValue == 21) {
-			playerBlackjack = true;
-			playerMoney += playerBetAmount * 2;
-			playerBetAmount = 0;
-		} else if (totalPlayerValue > 21) {
-			playerBust = true;
-			// bet handled in hit method
+	/**
+	 * Carries out one of the rules' extra choices for the player.
+	 */
+	private void choiceActions(Object button) {
+		if (button == doubleButton) {
+			engine.doubleDown();
+		} else if (button == splitButton) {
+			engine.split();
+		} else if (button == surrenderButton) {
+			engine.surrender();
+		} else {
+			engine.insure(button == insureButton);
 		}
-
-		if (totalDealerValue == 21) {
-			dealerBlackjack = true;
-			playerBetAmount = 0;
-		} else if (totalDealerValue > 21) {
-			dealerBust = true;
-			playerMoney += (playerBetAmount * 2);
-			playerBetAmount = 0;
+		if (engine.isPlayerStayed()) {
+			finishTurn();
 		}
 
-		if ((playerBlackjack && dealerBlackjack) || (playerBust && dealerBust)) {
-			tieGame = true;
-		}
+		initCardPositions();
+	}
 
-		if (!playerBlackjack && !playerBust && !dealerBlackjack && !dealerBust) {
-			if (totalDealerValue > totalPlayerValue) {
-				dealerWon = true;
-				playerBetAmount = 0;
+	/**
+	 * Has the other seats place their bets, buying back in when they run
+	 * out, and decline insurance.
+	 */
+	private void seatBets() {
+		for (int s = 1; s < engine.seats(); s++) {
+			if (engine.playerMoney(s) < SEAT_BET) {
+				engine.setPlayerMoney(s, BlackjackEngine.STARTING_MONEY);
 			}
-			if (totalDealerValue < totalPlayerValue) {
-				playerWon = true;
-				playerMoney += (playerBetAmount * 2);
-				playerBetAmount = 0;
+			engine.bet(s, SEAT_BET);
+			if (engine.isInsuranceOffered(s)) {
+				engine.insure(s, false);
 			}
+		}
+	}
+
+	/**
+	 * Plays the other seats once the player's turn is over.
+	 */
+	private void finishTurn() {
+		for (int s = 1; s < engine.seats(); s++) {
+			if (engine.turn() == s) {
+				strategy.playTurn(engine, s);
+			}
+		}
 
-			if (totalDealerValue == totalPlayerValue) {
-				tieGame = true;
+		// the engine plays the dealer's whole turn at once; the timer then shows it a card at a time
+		if (engine.dealerHand().size() > 2) {
+			dealerCardsShown = 2;
+			dealerTimer.start();
+		}
+	}
+
+	/**
+	 * Takes the next step of the replay, stopping at the end of the log or
+	 * where the cards come out differently.
+	 */
+	private void replayActions() {
+		try {
+			if (!replay.step()) {
+				replayTimer.stop();
+				setTitle(getTitle() + ", " + replay.rounds() + " rounds replayed");
 			}
+		} catch (IllegalStateException e) {
+			replayTimer.stop();
+			setTitle(getTitle() + ", diverged");
+			System.err.println("replay diverged: " + e.getMessage());
 		}
 
-		if (tieGame) {
-			playerMoney += playerBetAmount;
-			playerBetAmount = 0;
+		initCardPositions();
+	}
+
+	private void dealerActions() {
+		dealerCardsShown++;
+
+		if (dealerCardsShown >= engine.dealerHand().size()) {
+			dealerCardsShown = Integer.MAX_VALUE;
+			dealerTimer.stop();
 		}
 
-		gameOver = true;
+		initCardPositions();
 	}
 
-	private int countHand(ArrayList<Card> tmpHand) {
-		ArrayList<Card> hand = new ArrayList<Card>();
-		for (Card c : tmpHand) {
-			hand.add(c);
+	/**
+	 * A row of card slots drawn straight onto the panel.
+	 * Only slots whose image changes are repainted.
+	 */
+	private class CardRow {
+		/** The top of every card in the row. */
+		private final int y;
+		/** The left of the first card, and how far each card is from the one before. */
+		private int left = minSpacing;
+		private final int step;
+		/** The image in each slot; slots past size are empty. */
+		private Icon[] icons = new Icon[8];
+		/** The number of slots in use. */
+		private int size;
+
+		CardRow(int y) {
+			this(y, minSpacing + CARD_WIDTH);
+		}
+
+		CardRow(int y, int step) {
+			this.y = y;
+			this.step = step;
 		}
 
-		// counts aces last
-		int aceSwaps = 0;
-		for (int i = 0; i < hand.size()-1; i++) {
-			Card c = hand.get(i);
+		private int x(int i) {
+			return left + step * i;
+		}
 
-			if (c.rank().equals("ace")) {
-				Card cr = hand.remove(i);
-				hand.add(cr);
-				i--;
-				aceSwaps++;
+		/**
+		 * Moves the whole row so its first card starts at x.
+		 */
+		void setLeft(int x) {
+			if (x != left) {
+				left = x;
+				panel.repaint(0, y, panel.getWidth(), CARD_HEIGHT);
 			}
+		}
 
-			if (aceSwaps > 4) {
-				break;
+		/**
+		 * Shows an image in a slot, growing the row if needed.
+		 */
+		void set(int i, Icon icon) {
+			if (i >= icons.length) {
+				icons = Arrays.copyOf(icons, Math.max(i + 1, icons.length * 2));
+			}
+			if (i >= size) {
+				size = i + 1;
+			}
+			if (icons[i] != icon) {
+				icons[i] = icon;
+				panel.repaint(x(i), y, CARD_WIDTH, CARD_HEIGHT);
 			}
 		}
 
-		int totalValue = 0;
-
-		for (Card c : hand) {
-			if (c.rank().equals("ace") && totalValue <= 10) {
-				totalValue += 11;
-			} else if (c.rank().equals("ace") && totalValue > 10) {
-				totalValue += 1;
-			} else {
-				totalValue += c.pointValue();
+		/**
+		 * Empties every slot from n on.
+		 */
+		void setSize(int n) {
+			for (int i = n; i < size; i++) {
+				if (icons[i] != null) {
+					icons[i] = null;
+					panel.repaint(x(i), y, CARD_WIDTH, CARD_HEIGHT);
+				}
 			}
+			size = Math.min(size, n);
 		}
 
-		return totalValue;
+		/**
+		 * Draws the slots that overlap the area being painted.
+		 */
+		void paint(Graphics g) {
+			Rectangle clip = g.getClipBounds();
+			for (int i = 0; i < size; i++) {
+				if (icons[i] != null && (clip == null || clip.intersects(x(i), y, CARD_WIDTH, CARD_HEIGHT))) {
+					icons[i].paintIcon(panel, g, x(i), y);
+				}
+			}
+		}
 	}
 
 	private class MyMouseListener implements MouseListener {
 		public void mouseClicked(MouseEvent e) {
 			// System.out.println("(" + e.getX() + ", " + e.getY() + ")");
+			showCount = !showCount;
+			repaint();
 		}
 
 		public void mouseExited(MouseEvent e) {
@@ -0,0 +1,112 @@
+import java.io.File;
+import java.net.URL;
+import java.util.HashMap;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+
+/**
+ * CardImages.java
+ *
+ * <code>CardImages</code> loads the card faces, the card back and the
+ * button icons once and hands out the same <code>Icon</code> instances
+ * every time they are drawn.
+ * Images are looked up under the directory named by the
+ * <code>blackjack.media</code> system property if it is set, then under
+ * <code>/media</code> on the classpath, then in the <code>media</code>
+ * directory of the working directory.
+ */
+public class CardImages {
+
+	/** The system property naming a media directory to load from. */
+	public static final String MEDIA_PROPERTY = "blackjack.media";
+	/** The image used for face down cards. */
+	private static final String BACK = "gray_back";
+
+	/** The card faces, by ordinal. */
+	private final Icon[] faces = new Icon[Card.COUNT];
+	/** The face down card. */
+	private final Icon back;
+	/** The button icons loaded so far, by name. */
+	private final HashMap<String, Icon> icons = new HashMap<String, Icon>();
+	/** The root directory given by MEDIA_PROPERTY, or null. */
+	private final String mediaRoot;
+
+
+	/**
+	 * Creates a new <code>CardImages</code> instance and loads every card image.
+	 * @throws IllegalStateException if an image cannot be found.
+	 */
+	public CardImages() {
+		mediaRoot = System.getProperty(MEDIA_PROPERTY);
+
+		for (int ordinal = 0; ordinal < Card.COUNT; ordinal++) {
+			faces[ordinal] = load("cards/" + Card.of(ordinal).imageKey() + ".png");
+		}
+		back = load("cards/" + BACK + ".png");
+	}
+
+	/**
+	 * Accesses the face of a card.
+	 * @param ordinal the ordinal of the card.
+	 * @return the shared icon of that card's face.
+	 */
+	public Icon face(int ordinal) {
+		return faces[ordinal];
+	}
+
+	/**
+	 * Accesses the face of a card, or the back if no card is given.
+	 * @param c the card, or null for a face down card.
+	 * @return the shared icon to draw.
+	 */
+	public Icon of(Card c) {
+		return c == null ? back : faces[c.ordinal()];
+	}
+
+	/** @return the shared icon of a face down card. */
+	public Icon back() {
+		return back;
+	}
+
+	/**
+	 * Loads a button icon.
+	 * @param name the icon's name, e.g. "hit".
+	 * @return the icon.
+	 * @throws IllegalStateException if the icon cannot be found.
+	 */
+	public Icon icon(String name) {
+		Icon icon = icons.get(name);
+		if (icon == null) {
+			icon = load("icons/" + name + ".png");
+			icons.put(name, icon);
+		}
+		return icon;
+	}
+
+	/**
+	 * Loads an image from the first media location that has it.
+	 * @param path the path of the image below the media root, using '/'.
+	 * @return the loaded image.
+	 * @throws IllegalStateException if no location has the image.
+	 */
+	private ImageIcon load(String path) {
+		if (mediaRoot != null) {
+			File file = new File(mediaRoot, path);
+			if (file.isFile()) {
+				return new ImageIcon(file.getPath());
+			}
+		}
+
+		URL url = CardImages.class.getResource("/media/" + path);
+		if (url != null) {
+			return new ImageIcon(url);
+		}
+
+		File file = new File("media", path);
+		if (file.isFile()) {
+			return new ImageIcon(file.getPath());
+		}
+
+		throw new IllegalStateException("missing image: media/" + path);
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Comparison.java
+ *
+ * <code>Comparison</code> holds the totals of two strategies played on the
+ * same rounds, hand for hand, with common random numbers. Since both see
+ * the same cards, most of the luck cancels out of the difference between
+ * them, which is then known to a given precision from far fewer hands
+ * than two separate simulations would need.
+ */
+public class Comparison {
+
+	/** Each strategy's own totals. */
+	private final SimulationResult first = new SimulationResult();
+	private final SimulationResult second = new SimulationResult();
+	/** The sum of the first strategy's net less the second's, hand by hand, and of their squares. */
+	private long difference;
+	private long differenceSquares;
+
+
+	/**
+	 * Records one hand played both ways.
+	 * @param bet the amount wagered, the same both ways.
+	 * @param firstNet the money the first strategy won (positive) or lost (negative).
+	 * @param secondNet the money the second strategy won or lost.
+	 * @param natural true if the hand was dealt blackjack.
+	 */
+	public void record(int bet, int firstNet, int secondNet, boolean natural) {
+		first.record(bet, firstNet, natural);
+		second.record(bet, secondNet, natural);
+		long d = firstNet - secondNet;
+		difference += d;
+		differenceSquares += d * d;
+	}
+
+	/**
+	 * Adds the totals of another comparison to this one.
+	 * @param other the comparison to add.
+	 * @return this comparison.
+	 */
+	public Comparison merge(Comparison other) {
+		first.merge(other.first);
+		second.merge(other.second);
+		difference += other.difference;
+		differenceSquares += other.differenceSquares;
+		return this;
+	}
+
+	/** @return the first strategy's totals. */
+	public SimulationResult first() {
+		return first;
+	}
+
+	/** @return the second strategy's totals. */
+	public SimulationResult second() {
+		return second;
+	}
+
+	/** @return how much more the house gains per unit wagered against the first strategy than the second. */
+	public double edgeDifference() {
+		return first.houseEdge() - second.houseEdge();
+	}
+
+	/** @return the standard error of the edge difference, from the hand by hand differences. */
+	public double standardError() {
+		long hands = first.hands();
+		if (hands < 2) {
+			return 0;
+		}
+		double mean = (double) difference / hands;
+		double variance = ((double) differenceSquares - mean * difference) / (hands - 1);
+		return Math.sqrt(variance * hands) / first.wagered();
+	}
+
+	/** @return what the standard error would have been had the strategies been dealt different cards. */
+	public double independentError() {
+		long hands = first.hands();
+		if (hands < 2) {
+			return 0;
+		}
+		return Math.sqrt((first.variance() + second.variance()) * hands) / first.wagered();
+	}
+
+	/**
+	 * Generates and returns a report of this comparison.
+	 * @return a string representation of this comparison.
+	 */
+	@Override
+	public String toString() {
+		double paired = standardError();
+		double independent = independentError();
+		return String.format(
+			"first:%n%ssecond:%n%sedge difference = %.4f%% +- %.4f%%   (+- %.4f%% dealt independently, %.1fx the hands)%n",
+			first, second, edgeDifference() * 100, paired * 100, independent * 100,
+			paired == 0 ? 0 : (independent * independent) / (paired * paired));
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * CompositionKey.java
+ *
+ * <code>CompositionKey</code> identifies a hand played against a given set
+ * of unseen cards, for caching results. The unseen cards are packed into
+ * one long, six bits per point value and eight for tens, which holds
+ * any shoe of up to eight decks.
+ */
+final class CompositionKey {
+
+	/** Where each point value's count sits in a packed composition. */
+	private static final int[] SHIFT = {0, 0, 6, 12, 18, 24, 30, 36, 42, 48, 54};
+
+	private long counts;
+	private int state;
+
+
+	CompositionKey() {
+	}
+
+	CompositionKey(long counts, int state) {
+		this.counts = counts;
+		this.state = state;
+	}
+
+	/**
+	 * Packs the cards per point value into a long.
+	 * @param counts the number of cards of each point value, at index 1 to 10.
+	 * @return the packed composition.
+	 */
+	static long pack(int[] counts) {
+		long packed = 0;
+		for (int v = 1; v <= 10; v++) {
+			packed += (long) counts[v] << SHIFT[v];
+		}
+		return packed;
+	}
+
+	/**
+	 * The amount a packed composition changes by when one card is added or removed.
+	 * @param value the point value of the card.
+	 * @return the packed value of one card.
+	 */
+	static long unit(int value) {
+		return 1L << SHIFT[value];
+	}
+
+	/**
+	 * Reuses this key for a lookup.
+	 */
+	void set(long counts, int state) {
+		this.counts = counts;
+		this.state = state;
+	}
+
+	long counts() {
+		return counts;
+	}
+
+	int state() {
+		return state;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CompositionKey && ((CompositionKey) o).counts == counts && ((CompositionKey) o).state == state;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(counts * 0x9E3779B97F4A7C15L) * 31 + state;
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * CountTracker.java
+ *
+ * <code>CountTracker</code> keeps the running count of one or more
+ * counting systems as cards are dealt. Register it with
+ * <code>Deck.addDealListener</code> or <code>Shoe.addDealListener</code>.
+ * Each card costs one array read and add per system.
+ */
+public class CountTracker implements DealListener {
+
+	/** The systems being counted. */
+	private final CountingSystem[] systems;
+	/** The weights of every system, system by system, each indexed by ordinal. */
+	private final byte[] weights;
+	/** The running count of each system. */
+	private final int[] running;
+	/** The number of cards in a full shoe. */
+	private final int totalCards;
+	/** The number of cards dealt since the last shuffle, counting any a reshuffle left on the table. */
+	private int seen;
+
+
+	/**
+	 * Creates a new <code>CountTracker</code> instance.
+	 * @param totalCards the number of cards in the deck or shoe being counted.
+	 * @param systems the systems to count.
+	 */
+	public CountTracker(int totalCards, CountingSystem... systems) {
+		this.systems = systems.clone();
+		this.totalCards = totalCards;
+		this.running = new int[systems.length];
+		this.weights = new byte[systems.length * Card.COUNT];
+
+		for (int s = 0; s < systems.length; s++) {
+			for (int ordinal = 0; ordinal < Card.COUNT; ordinal++) {
+				weights[s * Card.COUNT + ordinal] = (byte) systems[s].weight(ordinal);
+			}
+		}
+	}
+
+	@Override
+	public void cardDealt(int ordinal) {
+		for (int s = 0, i = ordinal; s < running.length; s++, i += Card.COUNT) {
+			running[s] += weights[i];
+		}
+		seen++;
+	}
+
+	@Override
+	public void shuffled() {
+		for (int s = 0; s < running.length; s++) {
+			running[s] = 0;
+		}
+		seen = 0;
+	}
+
+	/**
+	 * Accesses a running count.
+	 * @param system the index of the system, in the order given to the constructor.
+	 * @return the running count.
+	 */
+	public int runningCount(int system) {
+		return running[system];
+	}
+
+	/**
+	 * Accesses a true count: the running count per deck still to be dealt.
+	 * @param system the index of the system, in the order given to the constructor.
+	 * @return the true count.
+	 */
+	public double trueCount(int system) {
+		return running[system] / decksRemaining();
+	}
+
+	/** @return the estimated number of decks still to be dealt, never less than half a deck. */
+	public double decksRemaining() {
+		return Math.max(totalCards - seen, Card.COUNT / 2) / (double) Card.COUNT;
+	}
+
+	/** @return the number of cards dealt since the last shuffle. */
+	public int cardsSeen() {
+		return seen;
+	}
+
+	/**
+	 * Accesses a system being counted.
+	 * @param system the index of the system, in the order given to the constructor.
+	 * @return the system.
+	 */
+	public CountingSystem system(int system) {
+		return systems[system];
+	}
+
+	/** @return the number of systems being counted. */
+	public int systemCount() {
+		return systems.length;
+	}
+}
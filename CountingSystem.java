@@ -0,0 +1,59 @@
+/**
+ * CountingSystem.java
+ *
+ * <code>CountingSystem</code> is a card counting system: the amount each
+ * card adds to the running count. Weights are kept per card ordinal so
+ * counting a card is a single array read.
+ */
+public final class CountingSystem {
+
+	/** Hi-Lo: 2-6 count +1, 10s and aces count -1. */
+	public static final CountingSystem HI_LO = new CountingSystem("Hi-Lo",
+		new int[] {-1, 1, 1, 1, 1, 1, 0, 0, 0, -1, -1, -1, -1});
+	/** Hi-Opt I: 3-6 count +1, 10s count -1, aces are not counted. */
+	public static final CountingSystem HI_OPT_I = new CountingSystem("Hi-Opt I",
+		new int[] {0, 0, 1, 1, 1, 1, 0, 0, 0, -1, -1, -1, -1});
+	/** Omega II: a level two count that leaves aces out. */
+	public static final CountingSystem OMEGA_II = new CountingSystem("Omega II",
+		new int[] {0, 1, 1, 2, 2, 2, 1, 0, -1, -2, -2, -2, -2});
+
+	/** The name of the system. */
+	private final String name;
+	/** The weight of each card, by ordinal. */
+	private final byte[] weights = new byte[Card.COUNT];
+
+
+	/**
+	 * Creates a new <code>CountingSystem</code> instance.
+	 * @param name the name of the system.
+	 * @param rankWeights the weight of each rank, by rank index from ace to king.
+	 */
+	public CountingSystem(String name, int[] rankWeights) {
+		if (rankWeights.length != Card.RANK_COUNT) {
+			throw new IllegalArgumentException("need " + Card.RANK_COUNT + " rank weights, got " + rankWeights.length);
+		}
+		this.name = name;
+		for (int ordinal = 0; ordinal < Card.COUNT; ordinal++) {
+			weights[ordinal] = (byte) rankWeights[Card.rank(ordinal)];
+		}
+	}
+
+	/**
+	 * Accesses the weight of a card.
+	 * @param ordinal the ordinal of the card.
+	 * @return the amount the card adds to the running count.
+	 */
+	public int weight(int ordinal) {
+		return weights[ordinal];
+	}
+
+	/** @return the name of the system. */
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
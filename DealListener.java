@@ -0,0 +1,21 @@
+/**
+ * DealListener.java
+ *
+ * <code>DealListener</code> is told about every card a <code>Deck</code>
+ * deals and every time it is shuffled.
+ * Listeners are called on the dealing thread and should return quickly.
+ */
+public interface DealListener {
+
+	/**
+	 * Called after a card is dealt.
+	 * @param ordinal the ordinal of the card dealt.
+	 */
+	void cardDealt(int ordinal);
+
+	/**
+	 * Called after the deck is shuffled, when the cards seen so far
+	 * no longer say anything about the cards to come.
+	 */
+	void shuffled();
+}
@@ -0,0 +1,222 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DealerOutcomes.java
+ *
+ * <code>DealerOutcomes</code> works out exactly how likely the dealer is
+ * to finish on 17, 18, 19, 20, 21 or bust, given the up card and the cards
+ * that are still unseen, drawing as a set of <code>Rules</code> says.
+ * Every way the dealer can draw is enumerated.
+ * Results for each (dealer hand, remaining cards) pair are kept in a
+ * size-bounded least-recently-used cache, so later queries in the same
+ * shoe reuse what earlier ones worked out.
+ * Not safe for use by more than one thread at a time.
+ */
+public class DealerOutcomes {
+
+	/** The number of outcomes: 17, 18, 19, 20, 21, bust. */
+	public static final int OUTCOMES = 6;
+	/** The index of bust in a distribution. */
+	public static final int BUST = 5;
+	/** The number of cached results kept when no limit is given. */
+	public static final int DEFAULT_CAPACITY = 200_000;
+
+	/** The cards per point value in one fresh deck. */
+	private static final int[] ONE_DECK = {0, 4, 4, 4, 4, 4, 4, 4, 4, 4, 16};
+
+	/** The rules the dealer draws by. */
+	private final Rules rules;
+	/** The cached results. */
+	private final LinkedHashMap<CompositionKey, double[]> memo;
+	/** Reused to look up the cache without allocating. */
+	private final CompositionKey probe = new CompositionKey();
+	/** Queries answered from the cache and not. */
+	private long hits;
+	private long misses;
+
+
+	/**
+	 * Creates a new <code>DealerOutcomes</code> for the default rules, with the default cache size.
+	 */
+	public DealerOutcomes() {
+		this(Rules.DEFAULT, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new <code>DealerOutcomes</code> with the default cache size.
+	 * @param rules the rules the dealer draws by.
+	 */
+	public DealerOutcomes(Rules rules) {
+		this(rules, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new <code>DealerOutcomes</code> instance.
+	 * @param rules the rules the dealer draws by.
+	 * @param capacity the most results to keep cached.
+	 */
+	public DealerOutcomes(Rules rules, int capacity) {
+		this.rules = rules;
+		memo = new LinkedHashMap<CompositionKey, double[]>(1024, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CompositionKey, double[]> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Works out the dealer's final totals.
+	 * @param upValue the point value of the dealer's up card, 1 (ace) to 10.
+	 * @param counts the unseen cards, including the dealer's hole card,
+	 *        by point value (index 1 to 10). Left unchanged.
+	 * @param noNatural true if the dealer is known not to hold blackjack,
+	 *        as is the case once the player is acting.
+	 * @return the chance of each outcome, 17 to 21 then bust.
+	 *         Shared with the cache; callers must not change it.
+	 */
+	public double[] distribution(int upValue, int[] counts, boolean noNatural) {
+		int remaining = 0;
+		for (int v = 1; v <= 10; v++) {
+			remaining += counts[v];
+		}
+		long packed = CompositionKey.pack(counts);
+
+		// the flag bits keep this apart from the drawing states, which stay below 34
+		int state = state(upValue, upValue == 1) | (noNatural ? 64 : 32) | rules.code() << 7;
+		probe.set(packed, state);
+		double[] cached = memo.get(probe);
+		if (cached != null) {
+			hits++;
+			return cached;
+		}
+		misses++;
+
+		double[] out = new double[OUTCOMES];
+		double total = 0;
+		for (int hole = 1; hole <= 10; hole++) {
+			if (counts[hole] == 0) {
+				continue;
+			}
+			boolean ace = upValue == 1 || hole == 1;
+			int hard = upValue + hole;
+			if (noNatural && ace && hard == 11) {
+				continue;
+			}
+
+			double p = counts[hole];
+			total += p;
+			counts[hole]--;
+			add(out, p, hard, ace, counts, packed - CompositionKey.unit(hole), remaining - 1);
+			counts[hole]++;
+		}
+		for (int k = 0; k < OUTCOMES; k++) {
+			out[k] /= total;
+		}
+
+		memo.put(new CompositionKey(packed, state), out);
+		return out;
+	}
+
+	/**
+	 * Adds p times the outcomes of a dealer hand to out.
+	 */
+	private void add(double[] out, double p, int hard, boolean ace, int[] counts, long packed, int remaining) {
+		int total = (ace && hard <= 11) ? hard + 10 : hard;
+		if (hard > 21) {
+			out[BUST] += p;
+		} else if (!rules.dealerHits(hard, ace)) {
+			out[total - 17] += p;
+		} else {
+			double[] sub = finish(hard, ace, counts, packed, remaining);
+			for (int k = 0; k < OUTCOMES; k++) {
+				out[k] += p * sub[k];
+			}
+		}
+	}
+
+	/**
+	 * The outcomes of a dealer hand that must still draw.
+	 */
+	private double[] finish(int hard, boolean ace, int[] counts, long packed, int remaining) {
+		if (remaining == 0) {
+			// the shoe would be reshuffled; carry on as if from a fresh deck
+			int[] fresh = ONE_DECK.clone();
+			return finish(hard, ace, fresh, CompositionKey.pack(fresh), Card.COUNT);
+		}
+
+		int state = state(hard, ace) | rules.code() << 7;
+		probe.set(packed, state);
+		double[] cached = memo.get(probe);
+		if (cached != null) {
+			return cached;
+		}
+
+		double[] out = new double[OUTCOMES];
+		for (int v = 1; v <= 10; v++) {
+			if (counts[v] == 0) {
+				continue;
+			}
+			double p = (double) counts[v] / remaining;
+			counts[v]--;
+			add(out, p, hard + v, ace || v == 1, counts, packed - CompositionKey.unit(v), remaining - 1);
+			counts[v]++;
+		}
+
+		memo.put(new CompositionKey(packed, state), out);
+		return out;
+	}
+
+	private static int state(int hard, boolean ace) {
+		return (hard << 1) | (ace ? 1 : 0);
+	}
+
+	/** @return the rules the dealer draws by. */
+	public Rules rules() {
+		return rules;
+	}
+
+	/**
+	 * Works out how standing on a total would end against a dealer distribution.
+	 * @param rules the rules the hand is settled by.
+	 * @param playerTotal the player's total, 21 or less.
+	 * @param distribution the dealer's outcomes from <code>distribution</code>.
+	 * @param out filled with the chance to win, push and lose, in that order.
+	 */
+	public static void standChances(Rules rules, int playerTotal, double[] distribution, double[] out) {
+		double win = 0;
+		double push = 0;
+		double lose = 0;
+		// a bust is the dealer total after 21
+		for (int d = 17; d <= 17 + BUST; d++) {
+			double p = distribution[d - 17];
+			int kind = rules.settle(playerTotal, d);
+			if (kind == Rules.WIN) {
+				win += p;
+			} else if (kind == Rules.PUSH) {
+				push += p;
+			} else {
+				lose += p;
+			}
+		}
+		out[0] = win;
+		out[1] = push;
+		out[2] = lose;
+	}
+
+	/** @return the number of results in the cache. */
+	public int size() {
+		return memo.size();
+	}
+
+	/** @return the number of top level queries answered straight from the cache. */
+	public long hits() {
+		return hits;
+	}
+
+	/** @return the number of top level queries that had to be worked out. */
+	public long misses() {
+		return misses;
+	}
+}
@@ -1,17 +1,22 @@
-import java.util.List;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
 
 /**
  * The Deck class represents a shuffled deck of cards.
  * It provides several operations including
  *      initialize, shuffle, deal, and check if empty.
+ * Cards are held as ordinals (see <code>Card</code>) so dealing
+ * and counting never touch strings or allocate.
  */
 public class Deck implements Cloneable {
 
 	/**
-	 * cards contains all the cards in the deck.
+	 * cards contains the ordinals of all the cards in the deck.
 	 */
-	private ArrayList<Card> cards;
+	private byte[] cards;
 
 	/**
 	 * size is the number of not-yet-dealt cards.
@@ -20,6 +25,32 @@ public class Deck implements Cloneable {
 	 */
 	private int size;
 
+	/**
+	 * rng is the source of randomness for shuffling.
+	 * Each deck owns its own so decks on different threads never share one.
+	 * Any generator works, e.g. a <code>SplittableRandom</code> split per thread,
+	 * or a <code>SecureRandom</code> when the order must not be predictable.
+	 */
+	private RandomGenerator rng;
+
+	/**
+	 * listeners are told about every card dealt and every shuffle.
+	 */
+	private DealListener[] listeners = new DealListener[0];
+
+	/**
+	 * An index of the undealt cards by ordinal, built when a particular
+	 * card is first asked for after the order changes, and kept up as cards
+	 * are dealt. The positions of the undealt copies of ordinal o are
+	 * positions[first[o]] to positions[first[o] + undealt[o] - 1], and
+	 * slot[p] is where position p is listed.
+	 */
+	private int[] positions;
+	private int[] slot;
+	private int[] first;
+	private int[] undealt;
+	private boolean indexed;
+
 
 	/**
 	 * Creates a new <code>Deck</code> instance.<BR>
@@ -30,19 +61,52 @@ public class Deck implements Cloneable {
 	 * @param values is an array containing all of the card point values.
 	 */
 	public Deck(String[] ranks, String[] suits, int[] values) {
-		cards = new ArrayList<Card>();
+		this(ranks, suits, values, RandomGenerator.of("L64X128MixRandom"));
+	}
+
+	/**
+	 * Creates a new <code>Deck</code> holding one or more standard 52 card decks.
+	 * @param decks the number of standard decks to combine.
+	 * @param rng is the random number generator used to shuffle.
+	 */
+	public Deck(int decks, RandomGenerator rng) {
+		this.rng = rng;
+		cards = new byte[decks * Card.COUNT];
+
+		for (int i = 0; i < cards.length; i++) {
+			cards[i] = (byte) (i % Card.COUNT);
+		}
+
+		this.size = cards.length;
 
+		shuffle();
+	}
+
+	/**
+	 * Creates a new <code>Deck</code> instance that shuffles with the given generator.
+	 * @param ranks is an array containing all of the card ranks.
+	 * @param suits is an array containing all of the card suits.
+	 * @param values is an array containing all of the card point values.
+	 * @param rng is the random number generator used to shuffle.
+	 * @throws IllegalArgumentException if a rank or suit is not a standard one,
+	 *         or a value does not match its rank.
+	 */
+	public Deck(String[] ranks, String[] suits, int[] values, RandomGenerator rng) {
+		this.rng = rng;
+		cards = new byte[ranks.length * suits.length];
+
+		int n = 0;
 		for (int suitN = 0; suitN < suits.length; suitN++) {
 			for (int i = 0; i < ranks.length; i++) {
-				String rank = ranks[i];
-				String suit = suits[suitN];
-				int value = values[i];
-				Card card = new Card(rank, suit, value);
-				cards.add(card);
+				Card card = Card.of(ranks[i], suits[suitN]);
+				if (card.pointValue() != values[i]) {
+					throw new IllegalArgumentException(ranks[i] + " is worth " + card.pointValue() + ", not " + values[i]);
+				}
+				cards[n++] = (byte) card.ordinal();
 			}
 		}
 
-		this.size = cards.size();
+		this.size = cards.length;
 
 		shuffle();
 	}
@@ -64,47 +128,99 @@ public class Deck implements Cloneable {
 		return size;
 	}
 
+	/**
+	 * Accesses the number of cards in this deck, dealt or not.
+	 * @return the number of cards in this deck.
+	 */
+	public int totalSize() {
+		return cards.length;
+	}
+
 	/**
 	 * Randomly permute the given collection of cards
 	 * and reset the size to represent the entire deck.
+	 * Uses an in-place Fisher-Yates shuffle, so every order is equally
+	 * likely and nothing is allocated.
 	 */
 	public void shuffle() {
-		int shuffleAmount = (int)(Math.random()*20) + 3;
-        for (int notUsed = 0; notUsed < shuffleAmount; notUsed++) { // a random amount
-            // create new arrays
-            int half = cards.size() / 2;
-            Card[] first = new Card[half];
-            Card[] second = new Card[half];
-
-            // split the deck
-            for (int i = 0; i < half; i++) {
-                first[i] = cards.get(i);
-            }
-            for (int i = half; i < cards.size(); i++) {
-                second[i-half] = cards.get(i);
-            }
-
-			int rng = (int)(Math.random() * 2);
-			if (rng == 0) {
-				Card[] tmp = first;
-				first = second;
-				second = tmp;
-			}
+		for (int k = cards.length - 1; k > 0; k--) {
+			int r = rng.nextInt(k + 1);
+			byte tmp = cards[k];
+			cards[k] = cards[r];
+			cards[r] = tmp;
+		}
 
-			ArrayList<Card> tmp = new ArrayList<Card>();
+		this.size = cards.length;
+		indexed = false;
+		for (DealListener l : listeners) {
+			l.shuffled();
+		}
+	}
+
+	/**
+	 * Shuffles the dealt cards back under the undealt ones, except for
+	 * the most recently dealt cards, which stay dealt.
+	 * This lets a round that runs out of cards go on without
+	 * returning the cards still on the table. Listeners are told of the
+	 * shuffle and then of the cards on the table again, which are seen
+	 * before anything left in the shoe.
+	 * @param inPlay the number of most recently dealt cards to leave dealt.
+	 */
+	public void reshuffleDealt(int inPlay) {
+		// dealt cards are [in play | discards]; rotate them to [discards | in play]
+		reverse(size, size + inPlay);
+		reverse(size + inPlay, cards.length);
+		reverse(size, cards.length);
+
+		int undealt = cards.length - inPlay;
+		for (int k = undealt - 1; k > 0; k--) {
+			int r = rng.nextInt(k + 1);
+			byte tmp = cards[k];
+			cards[k] = cards[r];
+			cards[r] = tmp;
+		}
+
+		this.size = undealt;
+		redeal();
+	}
+
+	private void reverse(int from, int to) {
+		for (int i = from, j = to - 1; i < j; i++, j--) {
+			byte tmp = cards[i];
+			cards[i] = cards[j];
+			cards[j] = tmp;
+		}
+	}
 
-            // shuffle
-            for (int i = 0; i < half; i++) {
-                for (int j = 0; j < 2; j++) {
-                    if (j == 0) { tmp.add(first[i]); }
-                    else { tmp.add(second[i]); }
-                }
-            }
+	/**
+	 * Registers a listener to be told about every card dealt and every shuffle.
+	 * @param listener the listener.
+	 */
+	public void addDealListener(DealListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
 
-			cards = tmp;
-        }
+	/**
+	 * Replaces the generator used by later shuffles.
+	 * @param rng the new random number generator.
+	 */
+	public void setRandom(RandomGenerator rng) {
+		this.rng = rng;
+	}
 
-		this.size = cards.size();
+	/**
+	 * Counts the undealt cards of each point value.
+	 * @param counts filled with the number of undealt cards worth each
+	 *        point value, at index 1 (ace) to 10.
+	 */
+	public void composition(int[] counts) {
+		for (int v = 0; v <= 10; v++) {
+			counts[v] = 0;
+		}
+		for (int i = 0; i < size; i++) {
+			counts[Card.points(cards[i])]++;
+		}
 	}
 
 	/**
@@ -113,67 +229,414 @@ public class Deck implements Cloneable {
 	 *         previously dealt.
 	 */
 	public Card deal() {
-		size--;
-		if (size < 0) {
+		int ordinal = dealOrdinal();
+		if (ordinal < 0) {
 			return null;
 		}
-		return cards.get(size);
+		return Card.of(ordinal);
 	}
 
 	/**
-	 * Deals a card of a certain value from this deck.
-	 * @return the card just dealt, or null if all the cards have been
-	 *         previously dealt.
+	 * Deals a card from this deck without looking up its <code>Card</code>.
+	 * @return the ordinal of the card just dealt, or -1 if all the cards
+	 *         have been previously dealt.
 	 */
-	public Card deal(int value) {
-		shuffle();
+	public int dealOrdinal() {
+		if (size == 0) {
+			return -1;
+		}
 		size--;
+		if (indexed) {
+			unindex(size);
+		}
+		int ordinal = cards[size];
+		for (DealListener l : listeners) {
+			l.cardDealt(ordinal);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Deals a card of a certain value from this deck, chosen at random
+	 * from the undealt cards of that value.
+	 * @param value the point value, 1 (ace) to 10.
+	 * @return the card just dealt, or null if no undealt card has that value.
+	 */
+	public Card deal(int value) {
+		index();
+		int total = 0;
+		for (int o = 0; o < Card.COUNT; o++) {
+			if (Card.points(o) == value) {
+				total += undealt[o];
+			}
+		}
+		if (total == 0) {
+			return null;
+		}
+		int k = rng.nextInt(total);
+		int o = 0;
+		while (Card.points(o) != value || k >= undealt[o]) {
+			if (Card.points(o) == value) {
+				k -= undealt[o];
+			}
+			o++;
+		}
+		return Card.of(draw(o));
+	}
+
+	/**
+	 * Deals a card of a certain rank from this deck, chosen at random
+	 * from the undealt cards of that rank.
+	 * @param rank the rank index, 0 (ace) to 12 (king).
+	 * @return the ordinal of the card just dealt, or -1 if no undealt card has that rank.
+	 */
+	public int dealRank(int rank) {
+		index();
+		int total = 0;
+		for (int suit = 0; suit < Card.SUIT_COUNT; suit++) {
+			total += undealt[Card.ordinal(rank, suit)];
+		}
+		if (total == 0) {
+			return -1;
+		}
+		int k = rng.nextInt(total);
+		int suit = 0;
+		while (k >= undealt[Card.ordinal(rank, suit)]) {
+			k -= undealt[Card.ordinal(rank, suit)];
+			suit++;
+		}
+		return draw(Card.ordinal(rank, suit));
+	}
+
+	/**
+	 * Deals a particular card from wherever it is among the undealt cards.
+	 * The card that was next to be dealt takes its place.
+	 * @param ordinal the card's ordinal.
+	 * @return the ordinal, or -1 if no copy of the card is left undealt.
+	 */
+	public int draw(int ordinal) {
+		index();
+		if (undealt[ordinal] == 0) {
+			return -1;
+		}
+		swap(positions[first[ordinal] + undealt[ordinal] - 1], size - 1);
+		return dealOrdinal();
+	}
+
+	/**
+	 * Arranges the undealt cards so the next ones dealt are the given
+	 * cards, in order. The cards they displace take their places.
+	 * @param ordinals the ordinals of the cards to deal next, the first first.
+	 * @throws IllegalArgumentException if one is not a card, or there are
+	 *         not enough undealt copies of it; the deck is left as it was.
+	 */
+	public void stack(int... ordinals) {
+		index();
+		int[] wanted = new int[Card.COUNT];
+		for (int o : ordinals) {
+			if (o < 0 || o >= Card.COUNT) {
+				throw new IllegalArgumentException("not a card: " + o);
+			}
+			if (++wanted[o] > undealt[o]) {
+				throw new IllegalArgumentException("only " + undealt[o] + " undealt " + Card.name(o));
+			}
+		}
+
+		for (int i = 0; i < ordinals.length; i++) {
+			int o = ordinals[i];
+			int top = size - 1 - i;
+			swap(positions[first[o] + undealt[o] - 1], top);
+			// out of the index until every card is placed, so none is moved twice
+			unindex(top);
+		}
+		for (int i = 0; i < ordinals.length; i++) {
+			reindex(size - 1 - i);
+		}
+	}
+
+	/** Builds the index of the undealt cards, unless it is up to date. */
+	private void index() {
+		if (indexed) {
+			return;
+		}
+		if (positions == null) {
+			positions = new int[cards.length];
+			slot = new int[cards.length];
+			first = new int[Card.COUNT + 1];
+			undealt = new int[Card.COUNT];
+		}
+		// every copy, dealt or not, gets a place in its ordinal's list
+		Arrays.fill(first, 0);
+		for (byte ordinal : cards) {
+			first[ordinal + 1]++;
+		}
+		for (int o = 0; o < Card.COUNT; o++) {
+			first[o + 1] += first[o];
+		}
+		Arrays.fill(undealt, 0);
+		for (int p = 0; p < size; p++) {
+			reindex(p);
+		}
+		indexed = true;
+	}
 
-		for (int i = 0; i < cards.size(); i++) {
-			if (cards.get(i).pointValue() == value) {
-				return cards.get(i);
+	/** Lists an undealt position in the index. */
+	private void reindex(int p) {
+		int ordinal = cards[p];
+		int s = first[ordinal] + undealt[ordinal]++;
+		positions[s] = p;
+		slot[p] = s;
+	}
+
+	/** Takes a position out of the index, as its card is dealt. */
+	private void unindex(int p) {
+		int ordinal = cards[p];
+		int last = positions[first[ordinal] + --undealt[ordinal]];
+		positions[slot[p]] = last;
+		slot[last] = slot[p];
+	}
+
+	/** Swaps the cards at two listed positions, keeping the index. */
+	private void swap(int p, int q) {
+		if (p == q) {
+			return;
+		}
+		byte tmp = cards[p];
+		cards[p] = cards[q];
+		cards[q] = tmp;
+		int sp = slot[p];
+		int sq = slot[q];
+		positions[sp] = q;
+		positions[sq] = p;
+		slot[p] = sq;
+		slot[q] = sp;
+	}
+
+	/**
+	 * Writes the order of the cards and how many are dealt.
+	 * @param out the buffer to write to.
+	 */
+	public void writeTo(ByteBuffer out) {
+		out.putShort((short) cards.length);
+		out.putShort((short) size);
+		out.put(cards);
+	}
+
+	/**
+	 * Puts the cards back in an order written by <code>writeTo</code>.
+	 * Listeners are told of a shuffle and then of every card dealt since,
+	 * so a count picks up where it was.
+	 * @param in the buffer to read from.
+	 * @throws IllegalArgumentException if the order is for a deck of a
+	 *         different size, holds something that is not a card, or is not
+	 *         an order of this deck's cards.
+	 */
+	public void readFrom(ByteBuffer in) {
+		int length = in.getShort();
+		int dealt = length - in.getShort();
+		if (length != cards.length || dealt < 0 || dealt > length) {
+			throw new IllegalArgumentException("not an order of " + cards.length + " cards");
+		}
+		byte[] order = new byte[length];
+		in.get(order);
+		for (byte ordinal : order) {
+			if (ordinal < 0 || ordinal >= Card.COUNT) {
+				throw new IllegalArgumentException("not a card: " + ordinal);
 			}
 		}
+		checkSameCards(order);
 
-		return null; // shouldn't happen
+		cards = order;
+		size = length - dealt;
+		redeal();
+	}
+
+	/**
+	 * Makes this deck's order and dealt cards the same as another's.
+	 * Listeners are told as by <code>readFrom</code>.
+	 * @param other a deck of the same size.
+	 * @throws IllegalArgumentException if the other deck is a different size.
+	 */
+	public void copyFrom(Deck other) {
+		if (other.cards.length != cards.length) {
+			throw new IllegalArgumentException("not a deck of " + cards.length + " cards");
+		}
+		System.arraycopy(other.cards, 0, cards, 0, cards.length);
+		size = other.size;
+		redeal();
+	}
+
+	/**
+	 * Tells listeners the deck was shuffled and then dealt down to where it
+	 * is, after its order was set from elsewhere or its discards shuffled back.
+	 */
+	private void redeal() {
+		indexed = false;
+		for (DealListener l : listeners) {
+			l.shuffled();
+			for (int k = cards.length - 1; k >= size; k--) {
+				l.cardDealt(cards[k]);
+			}
+		}
 	}
 
 	public Card cardAt(int i) {
-		return cards.get(i);
+		return Card.of(cards[i]);
 	}
 
 	/**
-	 * Generates and returns a string representation of this deck.
-	 * @return a string representation of this deck.
+	 * Accesses the ordinal of the card at a position in this deck.
+	 * @param i the position, from 0 (bottom) to the deck's full size - 1 (top).
+	 * @return the ordinal of the card at that position.
 	 */
-	@Override
-	public String toString() {
-		String rtn = "size = " + size + "\nUndealt cards: \n";
+	public int ordinalAt(int i) {
+		return cards[i];
+	}
 
+	/**
+	 * Writes this deck's undealt cards, the next to be dealt first, and
+	 * then its dealt cards, the most recent last, two to a line. Writes
+	 * straight to the destination, so a shoe of any size costs time in
+	 * proportion to its size and allocates nothing.
+	 * @param out where to write, e.g. a <code>Writer</code> or <code>StringBuilder</code>.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	public void dump(Appendable out) throws IOException {
+		out.append("size = ").append(Integer.toString(size)).append("\nUndealt cards: \n");
 		for (int k = size - 1; k >= 0; k--) {
-			rtn = rtn + cards.get(k);
+			out.append(Card.name(cards[k]));
 			if (k != 0) {
-				rtn = rtn + ",   ";
+				out.append(",   ");
 			}
 			if ((size - k) % 2 == 0) {
 				// Insert carriage returns so entire deck is visible on console.
-				rtn = rtn + "\n";
+				out.append('\n');
 			}
 		}
 
-		rtn = rtn + "\nDealt cards: \n";
-		for (int k = cards.size() - 1; k >= size; k--) {
-			rtn = rtn + cards.get(k);
+		out.append("\nDealt cards: \n");
+		for (int k = cards.length - 1; k >= size; k--) {
+			out.append(Card.name(cards[k]));
 			if (k != size) {
-				rtn = rtn + ",   ";
+				out.append(",   ");
 			}
-			if ((k - cards.size()) % 2 == 0) {
+			if ((k - cards.length) % 2 == 0) {
 				// Insert carriage returns so entire deck is visible on console.
-				rtn = rtn + "\n";
+				out.append('\n');
 			}
 		}
+		out.append('\n');
+	}
+
+	/**
+	 * Writes this deck as one line of text, one character per card: the
+	 * number of undealt cards, a colon, and every card from the bottom of
+	 * the deck to the top, A to Z for ordinals 0 to 25 and a to z for 26
+	 * to 51. It is text rather than raw ordinal bytes so that it can go to
+	 * any <code>Appendable</code>, such as a log line, and still be read and
+	 * compared by eye. Two decks in the same order write the same line, and
+	 * where two lines differ is where the decks do. Read it back with
+	 * <code>readCompact</code>; <code>writeTo</code> is the binary form.
+	 * @param out where to write.
+	 * @throws IOException if the destination cannot be written.
+	 */
+	public void dumpCompact(Appendable out) throws IOException {
+		out.append(Integer.toString(size)).append(':');
+		for (byte ordinal : cards) {
+			out.append(compact(ordinal));
+		}
+	}
+
+	/**
+	 * Puts the cards back in an order written by <code>dumpCompact</code>.
+	 * Listeners are told as by <code>readFrom</code>.
+	 * @param in the compact form, with or without a line ending.
+	 * @throws IllegalArgumentException if it is not the compact form of a
+	 *         deck of this size, or not an order of this deck's cards.
+	 */
+	public void readCompact(CharSequence in) {
+		int colon = 0;
+		while (colon < in.length() && in.charAt(colon) != ':') {
+			colon++;
+		}
+		int end = in.length();
+		while (end > colon && Character.isWhitespace(in.charAt(end - 1))) {
+			end--;
+		}
+		if (colon == 0 || colon == in.length() || end - colon - 1 != cards.length) {
+			throw new IllegalArgumentException("not a compact order of " + cards.length + " cards");
+		}
+		int undealt;
+		try {
+			undealt = Integer.parseInt(in, 0, colon, 10);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("not a number of cards: " + in.subSequence(0, colon));
+		}
+		if (undealt < 0 || undealt > cards.length) {
+			throw new IllegalArgumentException("undealt cards out of range: " + undealt);
+		}
+		byte[] order = new byte[cards.length];
+		for (int k = 0; k < order.length; k++) {
+			order[k] = ordinal(in.charAt(colon + 1 + k));
+		}
+		checkSameCards(order);
+
+		cards = order;
+		size = undealt;
+		redeal();
+	}
 
-		rtn = rtn + "\n";
-		return rtn;
+	/**
+	 * Checks that an order read from elsewhere holds every card of this
+	 * deck as many times as the deck does, and nothing else.
+	 * @throws IllegalArgumentException naming the first card with too many
+	 *         or too few copies.
+	 */
+	private void checkSameCards(byte[] order) {
+		int[] copies = new int[Card.COUNT];
+		for (byte ordinal : cards) {
+			copies[ordinal]++;
+		}
+		for (byte ordinal : order) {
+			copies[ordinal]--;
+		}
+		for (int o = 0; o < Card.COUNT; o++) {
+			if (copies[o] != 0) {
+				throw new IllegalArgumentException("not an order of this deck's cards: "
+					+ Math.abs(copies[o]) + (copies[o] < 0 ? " too many " : " too few ") + Card.name(o));
+			}
+		}
+	}
+
+	/** @return the compact form of an ordinal. */
+	private static char compact(int ordinal) {
+		return (char) (ordinal < 26 ? 'A' + ordinal : 'a' + ordinal - 26);
+	}
+
+	/** @return the ordinal of a card's compact form. */
+	private static byte ordinal(char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return (byte) (c - 'A');
+		}
+		if (c >= 'a' && c <= 'z') {
+			return (byte) (c - 'a' + 26);
+		}
+		throw new IllegalArgumentException("not a card: " + c);
+	}
+
+	/**
+	 * Generates and returns a string representation of this deck.
+	 * @return a string representation of this deck.
+	 */
+	@Override
+	public String toString() {
+		// about 32 characters a card
+		StringBuilder out = new StringBuilder(64 + cards.length * 32);
+		try {
+			dump(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // a StringBuilder never throws
+		}
+		return out.toString();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,479 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GameServer.java
+ *
+ * <code>GameServer</code> hosts many blackjack tables in one process and
+ * lets clients play them over a socket. Every connection may open tables
+ * of its own; a table lives until it is closed or its connection drops.
+ * Connections are shared out among a few event loops, one per core, and
+ * every request is carried out on the loop that read it: an action on a
+ * table takes well under a microsecond and never blocks, so a table costs
+ * its engine and shoe, a few kilobytes, rather than a thread. The money
+ * of every seat at every table is kept in one striped <code>Ledger</code>,
+ * and every table plays by the server's <code>Rules</code>.
+ * <p>
+ * Requests and responses are frames of fixed size, numbers big-endian.
+ * A client may send any number of requests without waiting; responses
+ * come back in the same order. Every seat bets before OP_DEAL, 0 to sit
+ * the round out; OP_BET while a round is in play is refused.
+ * <pre>
+ * request, REQUEST_SIZE bytes
+ *      0    1  op, one of the OP codes
+ *      1    1  seat; for OP_OPEN, the number of seats
+ *      2    2  table, as returned by OP_OPEN
+ *      4    4  the amount to bet; for OP_OPEN, each seat's starting money;
+ *              for OP_INSURE, 0 to decline insurance and anything else to take it
+ *
+ * response, RESPONSE_SIZE bytes
+ *      0    1  status, one of the STATUS codes
+ *      1    1  op of the request
+ *      2    2  table; for OP_OPEN, the table opened
+ *      4    1  seat the rest describes, 0 for OP_OPEN
+ *      5    1  seat whose turn it is, or -1
+ *      6    1  the seat's outcome, the ordinal of BlackjackEngine.Outcome
+ *      7    1  flags: FLAG_SOFT, FLAG_IN_PLAY, FLAG_INSURANCE
+ *      8    1  the point total of the hand the seat is playing
+ *      9    1  number of cards in that hand
+ *     10    1  the dealer's up card ordinal, or -1 before the first deal
+ *     11    1  the dealer's point total once the round is over, else 0
+ *     12    4  the seat's money in Ledger minor units, at most 2^31 - 1
+ * </pre>
+ * <pre>
+ *     java GameServer [port] [decks] [loops] [rules]   serve until killed
+ * </pre>
+ */
+public class GameServer implements Closeable {
+
+	/** The port served on when none is given. */
+	public static final int DEFAULT_PORT = 7007;
+	/** The most tables open at once across all connections. */
+	public static final int DEFAULT_MAX_TABLES = 100_000;
+
+	/** The size of a request and of a response in bytes. */
+	public static final int REQUEST_SIZE = 8;
+	public static final int RESPONSE_SIZE = 16;
+
+	/** Request codes. */
+	public static final byte OP_OPEN = 1;
+	public static final byte OP_BET = 2;
+	public static final byte OP_DEAL = 3;
+	public static final byte OP_HIT = 4;
+	public static final byte OP_STAND = 5;
+	public static final byte OP_CLOSE = 6;
+	public static final byte OP_DOUBLE = 7;
+	public static final byte OP_SPLIT = 8;
+	public static final byte OP_SURRENDER = 9;
+	public static final byte OP_INSURE = 10;
+
+	/** Response codes. */
+	public static final byte STATUS_OK = 0;
+	/** The action is not allowed now, e.g. hitting out of turn. */
+	public static final byte STATUS_ILLEGAL_STATE = 1;
+	/** A value in the request is out of range, e.g. a bet above the seat's money. */
+	public static final byte STATUS_BAD_ARGUMENT = 2;
+	/** The op or the table is unknown. */
+	public static final byte STATUS_UNKNOWN = 3;
+	/** No more tables can be opened. */
+	public static final byte STATUS_FULL = 4;
+
+	/** Response flags. */
+	public static final int FLAG_SOFT = 1;
+	public static final int FLAG_IN_PLAY = 2;
+	/** The seat is being offered insurance. */
+	public static final int FLAG_INSURANCE = 4;
+
+	/** Frames buffered per connection in each direction. */
+	private static final int FRAMES = 256;
+
+	/** The socket connections are accepted on. */
+	private final ServerSocketChannel server;
+	/** The event loops and their threads. */
+	private final Loop[] loops;
+	private final Thread[] threads;
+	/** The number of decks in each table's shoe. */
+	private final int decks;
+	/** The rules every table plays by. */
+	private final Rules rules;
+	/** The most tables open at once, and the number open. */
+	private final int maxTables;
+	private final AtomicInteger tables = new AtomicInteger();
+	/** The money of every seat at every table. */
+	private final Ledger ledger;
+	/** The loop the next connection goes to. */
+	private int nextLoop;
+	private volatile boolean closed;
+
+
+	/**
+	 * Creates a new <code>GameServer</code> with the default rules and starts serving.
+	 * @see #GameServer(int, int, int, int, Rules)
+	 */
+	public GameServer(int port, int decks, int loops, int maxTables) throws IOException {
+		this(port, decks, loops, maxTables, Rules.DEFAULT);
+	}
+
+	/**
+	 * Creates a new <code>GameServer</code> and starts serving.
+	 * @param port the port to listen on, or 0 for any free port.
+	 * @param decks the number of decks in each table's shoe.
+	 * @param loops the number of event loops, at least 1.
+	 * @param maxTables the most tables open at once.
+	 * @param rules the rules every table plays by.
+	 * @throws IOException if the port cannot be bound.
+	 */
+	public GameServer(int port, int decks, int loops, int maxTables, Rules rules) throws IOException {
+		if (decks < Shoe.MIN_DECKS || decks > Shoe.MAX_DECKS) {
+			throw new IllegalArgumentException("decks must be " + Shoe.MIN_DECKS + " to " + Shoe.MAX_DECKS + ": " + decks);
+		}
+		if (loops < 1) {
+			throw new IllegalArgumentException("loops must be at least 1: " + loops);
+		}
+		this.decks = decks;
+		this.rules = rules;
+		this.maxTables = maxTables;
+		this.ledger = new Ledger(loops * 4);
+
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port), 1024);
+		server.configureBlocking(false);
+
+		SplittableRandom rng = new SplittableRandom();
+		this.loops = new Loop[loops];
+		this.threads = new Thread[loops];
+		for (int i = 0; i < loops; i++) {
+			this.loops[i] = new Loop(rng.split());
+			threads[i] = new Thread(this.loops[i], "table-loop-" + i);
+		}
+		server.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+		for (Thread t : threads) {
+			t.start();
+		}
+	}
+
+	/** @return the port being served. */
+	public int port() {
+		return server.socket().getLocalPort();
+	}
+
+	/** @return the number of tables open. */
+	public int tables() {
+		return tables.get();
+	}
+
+	/** @return the ledger every seat's money is kept in. */
+	public Ledger ledger() {
+		return ledger;
+	}
+
+	/**
+	 * Stops serving and drops every connection and table.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		for (Loop loop : loops) {
+			loop.selector.wakeup();
+		}
+		for (Thread t : threads) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		server.close();
+	}
+
+	/** Takes every pending connection and hands them out to the loops in turn. */
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Loop loop = loops[nextLoop];
+			nextLoop = (nextLoop + 1) % loops.length;
+			loop.incoming.add(channel);
+			loop.selector.wakeup();
+		}
+	}
+
+	/**
+	 * Serves its share of the connections on one thread.
+	 */
+	private class Loop implements Runnable {
+		private final Selector selector;
+		/** Connections accepted for this loop but not yet registered. */
+		private final Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<SocketChannel>();
+		/** Shuffles every shoe opened on this loop. */
+		private final SplittableRandom rng;
+
+		Loop(SplittableRandom rng) throws IOException {
+			this.selector = Selector.open();
+			this.rng = rng;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					selector.select();
+					SocketChannel channel;
+					while ((channel = incoming.poll()) != null) {
+						channel.register(selector, SelectionKey.OP_READ, new Connection(channel, rng.split()));
+					}
+
+					for (SelectionKey key : selector.selectedKeys()) {
+						if (key.isValid() && key.isAcceptable()) {
+							accept();
+						} else if (key.isValid()) {
+							Connection connection = (Connection) key.attachment();
+							try {
+								connection.ready(key);
+							} catch (IOException e) {
+								connection.close(key);
+							}
+						}
+					}
+					selector.selectedKeys().clear();
+				}
+			} catch (IOException e) {
+				System.err.println(Thread.currentThread().getName() + " stopped: " + e);
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection) {
+						((Connection) key.attachment()).close(key);
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// nothing left to serve
+				}
+			}
+		}
+	}
+
+	/**
+	 * One client and the tables it has open. Only touched by its loop.
+	 */
+	private class Connection {
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocateDirect(REQUEST_SIZE * FRAMES);
+		private final ByteBuffer out = ByteBuffer.allocateDirect(RESPONSE_SIZE * FRAMES);
+		/** Shuffles the shoes of the tables this connection opens. */
+		private final SplittableRandom rng;
+		/** The open tables by number; closed numbers are null and reused. */
+		private BlackjackEngine[] open = new BlackjackEngine[4];
+		private int openCount;
+
+		Connection(SocketChannel channel, SplittableRandom rng) {
+			this.channel = channel;
+			this.rng = rng;
+		}
+
+		/**
+		 * Reads what has arrived, answers every whole request that fits in
+		 * the output buffer, and writes as much as the socket takes, until
+		 * no whole request is left or the responses are backed up. While
+		 * they are, no more is read, which holds back the client; requests
+		 * already read are answered as soon as the writes make room.
+		 */
+		void ready(SelectionKey key) throws IOException {
+			if (key.isReadable() && channel.read(in) < 0) {
+				close(key);
+				return;
+			}
+
+			do {
+				in.flip();
+				while (in.remaining() >= REQUEST_SIZE && out.remaining() >= RESPONSE_SIZE) {
+					handle();
+				}
+				in.compact();
+
+				out.flip();
+				channel.write(out);
+				out.compact();
+			} while (in.position() >= REQUEST_SIZE && out.remaining() >= RESPONSE_SIZE);
+
+			// only an empty output buffer goes back to reading, and then every whole request has been answered
+			key.interestOps(out.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		}
+
+		/** Carries out one request and writes its response. */
+		private void handle() {
+			byte op = in.get();
+			int seat = in.get();
+			int table = in.getShort() & 0xFFFF;
+			int amount = in.getInt();
+
+			if (op == OP_OPEN) {
+				open(seat, amount);
+				return;
+			}
+			BlackjackEngine engine = table < open.length ? open[table] : null;
+			if (engine == null) {
+				respond(STATUS_UNKNOWN, op, table, seat, null);
+				return;
+			}
+			if (op == OP_CLOSE) {
+				engine.closeAccounts();
+				open[table] = null;
+				openCount--;
+				tables.decrementAndGet();
+				respond(STATUS_OK, op, table, seat, null);
+				return;
+			}
+			if (seat < 0 || seat >= engine.seats()) {
+				respond(STATUS_BAD_ARGUMENT, op, table, seat, null);
+				return;
+			}
+
+			byte status = STATUS_OK;
+			try {
+				switch (op) {
+				case OP_BET:
+					// a remote seat bets only between rounds, before it has seen a card
+					if (engine.isRoundInPlay()) {
+						throw new IllegalStateException("round in play");
+					}
+					engine.bet(seat, amount);
+					break;
+				case OP_DEAL:
+					if (engine.isRoundInPlay()) {
+						throw new IllegalStateException("round in play");
+					}
+					engine.deal();
+					break;
+				case OP_HIT:
+					engine.hit(seat);
+					break;
+				case OP_STAND:
+					engine.stand(seat);
+					break;
+				case OP_DOUBLE:
+					engine.doubleDown(seat);
+					break;
+				case OP_SPLIT:
+					engine.split(seat);
+					break;
+				case OP_SURRENDER:
+					engine.surrender(seat);
+					break;
+				case OP_INSURE:
+					engine.insure(seat, amount != 0);
+					break;
+				default:
+					status = STATUS_UNKNOWN;
+				}
+			} catch (IllegalStateException e) {
+				status = STATUS_ILLEGAL_STATE;
+			} catch (IllegalArgumentException e) {
+				status = STATUS_BAD_ARGUMENT;
+			}
+			respond(status, op, table, seat, engine);
+		}
+
+		/** Opens a table in the first free number. */
+		private void open(int seats, int money) {
+			if (seats < 1 || seats > BlackjackEngine.MAX_SEATS || money < 0) {
+				respond(STATUS_BAD_ARGUMENT, OP_OPEN, 0, seats, null);
+				return;
+			}
+			int table = 0;
+			while (table < open.length && open[table] != null) {
+				table++;
+			}
+			if (table > 0xFFFF) {
+				respond(STATUS_FULL, OP_OPEN, 0, seats, null);
+				return;
+			}
+			if (tables.incrementAndGet() > maxTables) {
+				tables.decrementAndGet();
+				respond(STATUS_FULL, OP_OPEN, 0, seats, null);
+				return;
+			}
+			if (table == open.length) {
+				open = Arrays.copyOf(open, open.length * 2);
+			}
+			open[table] = new BlackjackEngine(new Shoe(decks, Shoe.DEFAULT_PENETRATION, rng.split()), seats, money, ledger, rules);
+			openCount++;
+			respond(STATUS_OK, OP_OPEN, table, 0, open[table]);
+		}
+
+		private void respond(byte status, byte op, int table, int seat, BlackjackEngine engine) {
+			int at = out.position();
+			out.put(at, status);
+			out.put(at + 1, op);
+			out.putShort(at + 2, (short) table);
+			out.put(at + 4, (byte) seat);
+			if (engine == null) {
+				out.put(at + 5, (byte) -1);
+				for (int i = at + 6; i < at + RESPONSE_SIZE; i++) {
+					out.put(i, (byte) 0);
+				}
+			} else {
+				Hand hand = engine.playerHand(seat);
+				Hand dealer = engine.dealerHand();
+				boolean inPlay = engine.isRoundInPlay();
+				out.put(at + 5, (byte) engine.turn());
+				out.put(at + 6, (byte) engine.outcome(seat).ordinal());
+				out.put(at + 7, (byte) ((hand.isSoft() ? FLAG_SOFT : 0) | (inPlay ? FLAG_IN_PLAY : 0)
+					| (engine.isInsuranceOffered(seat) ? FLAG_INSURANCE : 0)));
+				out.put(at + 8, (byte) hand.total());
+				out.put(at + 9, (byte) hand.size());
+				out.put(at + 10, (byte) (dealer.size() > 1 ? dealer.ordinalAt(1) : -1));
+				out.put(at + 11, (byte) (inPlay ? 0 : dealer.total()));
+				out.putInt(at + 12, (int) Math.min(engine.playerBalance(seat), Integer.MAX_VALUE));
+			}
+			out.position(at + RESPONSE_SIZE);
+		}
+
+		/** Drops the connection and its tables. */
+		void close(SelectionKey key) {
+			for (BlackjackEngine engine : open) {
+				if (engine != null) {
+					engine.closeAccounts();
+				}
+			}
+			tables.addAndGet(-openCount);
+			openCount = 0;
+			open = new BlackjackEngine[0];
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+	}
+
+	/**
+	 * Runs a server until the process is killed.
+	 * @param args the port, the number of decks in each shoe, the number of
+	 *        loops, and the table rules as <code>Rules.parse</code> reads them.
+	 * @throws IOException if the port cannot be bound.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int decks = args.length > 1 ? Integer.parseInt(args[1]) : Shoe.DEFAULT_DECKS;
+		int loops = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		Rules rules = args.length > 3 ? Rules.parse(args[3]) : Rules.DEFAULT;
+
+		GameServer server = new GameServer(port, decks, loops, DEFAULT_MAX_TABLES, rules);
+		System.out.printf("serving on port %d with %d loop(s), %d deck(s) per shoe, rules %s%n", server.port(), loops, decks, rules);
+	}
+}
@@ -0,0 +1,170 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hand.java
+ *
+ * <code>Hand</code> holds the cards of one player or the dealer as ordinals,
+ * along with a running hard total and ace count. Every question about the
+ * hand's value is answered from those without looking at the cards again.
+ */
+public class Hand {
+
+	/** Room for more cards than a hand almost ever holds; grows if needed. */
+	private static final int INITIAL_CAPACITY = 12;
+
+	/** The ordinals of the cards, in the order they were dealt. */
+	private byte[] cards = new byte[INITIAL_CAPACITY];
+	/** The number of cards in the hand. */
+	private int size;
+	/** The total with every ace counted as 1. */
+	private int hardTotal;
+	/** The number of aces in the hand. */
+	private int aces;
+
+
+	/**
+	 * Adds a card to this hand.
+	 * @param ordinal the ordinal of the card.
+	 */
+	public void add(int ordinal) {
+		if (size == cards.length) {
+			cards = Arrays.copyOf(cards, size * 2);
+		}
+		cards[size++] = (byte) ordinal;
+		hardTotal += Card.points(ordinal);
+		if (Card.isAce(ordinal)) {
+			aces++;
+		}
+	}
+
+	/**
+	 * Adds a card to this hand.
+	 * @param card the card.
+	 */
+	public void add(Card card) {
+		add(card.ordinal());
+	}
+
+	/**
+	 * Writes the cards in this hand.
+	 * @param out the buffer to write to.
+	 */
+	public void writeTo(ByteBuffer out) {
+		out.put((byte) size);
+		out.put(cards, 0, size);
+	}
+
+	/**
+	 * Replaces the cards in this hand with ones written by <code>writeTo</code>.
+	 * @param in the buffer to read from.
+	 * @throws IllegalArgumentException if something read is not a card.
+	 */
+	public void readFrom(ByteBuffer in) {
+		clear();
+		int n = in.get() & 0xFF;
+		for (int i = 0; i < n; i++) {
+			int ordinal = in.get();
+			if (ordinal < 0 || ordinal >= Card.COUNT) {
+				throw new IllegalArgumentException("not a card: " + ordinal);
+			}
+			add(ordinal);
+		}
+	}
+
+	/**
+	 * Takes the last card out of this hand, e.g. to split a pair.
+	 * @return the ordinal of the card.
+	 * @throws IllegalStateException if the hand is empty.
+	 */
+	public int removeLast() {
+		if (size == 0) {
+			throw new IllegalStateException("no cards");
+		}
+		int ordinal = cards[--size];
+		hardTotal -= Card.points(ordinal);
+		if (Card.isAce(ordinal)) {
+			aces--;
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Removes every card from this hand.
+	 */
+	public void clear() {
+		size = 0;
+		hardTotal = 0;
+		aces = 0;
+	}
+
+	/** @return the number of cards in this hand. */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Accesses the ordinal of a card in this hand.
+	 * @param i the position of the card, 0 being the first dealt.
+	 * @return the ordinal of the card.
+	 */
+	public int ordinalAt(int i) {
+		return cards[i];
+	}
+
+	/**
+	 * Accesses a card in this hand.
+	 * @param i the position of the card, 0 being the first dealt.
+	 * @return the card.
+	 */
+	public Card cardAt(int i) {
+		return Card.of(cards[i]);
+	}
+
+	/** @return the total with every ace counted as 1. */
+	public int hardTotal() {
+		return hardTotal;
+	}
+
+	/** @return the number of aces in this hand. */
+	public int aces() {
+		return aces;
+	}
+
+	/** @return true if an ace is being counted as 11. */
+	public boolean isSoft() {
+		return aces > 0 && hardTotal <= 11;
+	}
+
+	/**
+	 * Counts the points in this hand. Every ace counts 1, and one ace
+	 * counts 11 instead if that does not take the hand over 21.
+	 * @return the total point value of this hand.
+	 */
+	public int total() {
+		return isSoft() ? hardTotal + 10 : hardTotal;
+	}
+
+	/** @return true if this hand is over 21. */
+	public boolean isBust() {
+		return hardTotal > 21;
+	}
+
+	/** @return true if this hand is 21 with its first two cards. */
+	public boolean isBlackjack() {
+		return size == 2 && total() == 21;
+	}
+
+	/**
+	 * Generates and returns a string representation of this hand.
+	 * @return a string representation of this hand.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder rtn = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			rtn.append(i == 0 ? "" : ", ").append(Card.of(cards[i]).imageKey());
+		}
+		return rtn.append(" (").append(total()).append(isSoft() ? " soft)" : ")").toString();
+	}
+}
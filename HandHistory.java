@@ -0,0 +1,179 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HandHistory.java
+ *
+ * <code>HandHistory</code> appends every hand an engine settles to a
+ * binary log of fixed size records, one per seat per round. Records are
+ * gathered in a direct buffer and written to the file a batch at a time,
+ * so logging a hand costs a few stores. Several writers, on different threads or in
+ * different processes, may append to the same file; every write holds
+ * whole records. Read the log back with <code>HandHistoryReader</code>;
+ * a log of a seeded shoe holds all it takes for <code>Replay</code> to
+ * deal its rounds again.
+ * <pre>
+ * offset size  field
+ *      0    8  seed of the shoe the round was dealt from, 0 if unseeded
+ *      8    8  actions, 4 bits each, the first in the lowest bits
+ *     16    4  bet
+ *     20    4  payout, stake included
+ *     24    4  player's money after the round, at most 2^31 - 1
+ *     28    1  outcome, the ordinal of BlackjackEngine.Outcome
+ *     29    1  seat
+ *     30    1  number of player cards
+ *     31    1  number of dealer cards
+ *     32    1  number of actions
+ *     33    1  number of decks in the shoe
+ *     34    2  the shoe's penetration, in ten-thousandths
+ *     36   26  card ordinals, the player's then the dealer's
+ *     62    2  the table's <code>Rules</code> code, 0 for the default rules
+ * </pre>
+ * Numbers are little-endian, and money is in <code>Ledger</code> minor
+ * units. A seat that split has the cards of all its hands, in the order
+ * the hands were made, and the outcome of the first. Cards and actions
+ * past the slots are not kept, which almost no round reaches; such a
+ * round cannot be replayed. Logs written before the rules were kept read
+ * as the default rules.
+ */
+public class HandHistory implements RoundListener, Closeable {
+
+	/** The size of one record in bytes. */
+	public static final int RECORD_SIZE = 64;
+	/** The most cards and actions a record holds. */
+	public static final int CARD_SLOTS = 26;
+	public static final int ACTION_SLOTS = 16;
+	/** The byte order of every number in the log. */
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** Field offsets within a record. */
+	static final int SEED = 0;
+	static final int ACTIONS = 8;
+	static final int BET = 16;
+	static final int PAYOUT = 20;
+	static final int MONEY = 24;
+	static final int OUTCOME = 28;
+	static final int SEAT = 29;
+	static final int PLAYER_CARDS = 30;
+	static final int DEALER_CARDS = 31;
+	static final int ACTION_COUNT = 32;
+	static final int DECKS = 33;
+	static final int PENETRATION = 34;
+	static final int CARDS = 36;
+	static final int RULES = 62;
+
+	/** The number of records written to the file at once. */
+	private static final int BATCH = 1024;
+
+	/** The log file, opened for appending. */
+	private final FileChannel channel;
+	/** Records not yet written. */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * BATCH).order(ORDER);
+
+
+	/**
+	 * Opens a log for appending, creating it if it does not exist.
+	 * @param path the log file.
+	 * @throws IOException if the file cannot be opened.
+	 */
+	public HandHistory(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Records every seat's hand of a settled round.
+	 * @throws UncheckedIOException if a full batch cannot be written.
+	 */
+	@Override
+	public void roundEnded(BlackjackEngine engine) {
+		for (int seat = 0; seat < engine.seats(); seat++) {
+			append(engine, seat);
+		}
+	}
+
+	private void append(BlackjackEngine engine, int seat) {
+		Hand dealer = engine.dealerHand();
+		int held = 0;
+		for (int h = 0; h < engine.handCount(seat); h++) {
+			held += engine.playerHand(seat, h).size();
+		}
+		int playerCards = Math.min(held, CARD_SLOTS);
+		int dealerCards = Math.min(dealer.size(), CARD_SLOTS - playerCards);
+		int actionCount = Math.min(engine.actionCount(seat), ACTION_SLOTS);
+
+		long actions = 0;
+		for (int i = 0; i < actionCount; i++) {
+			actions |= (long) engine.actionAt(seat, i) << (i * 4);
+		}
+
+		Shoe shoe = engine.shoe();
+		int at = buffer.position();
+		buffer.putLong(at + SEED, shoe.seed());
+		buffer.putLong(at + ACTIONS, actions);
+		buffer.putInt(at + BET, (int) engine.roundBet(seat));
+		buffer.putInt(at + PAYOUT, (int) engine.roundPayout(seat));
+		buffer.putInt(at + MONEY, (int) Math.min(engine.playerBalance(seat), Integer.MAX_VALUE));
+		buffer.put(at + OUTCOME, (byte) engine.outcome(seat).ordinal());
+		buffer.put(at + SEAT, (byte) seat);
+		buffer.put(at + PLAYER_CARDS, (byte) playerCards);
+		buffer.put(at + DEALER_CARDS, (byte) dealerCards);
+		buffer.put(at + ACTION_COUNT, (byte) actionCount);
+		buffer.put(at + DECKS, (byte) shoe.decks());
+		buffer.putShort(at + PENETRATION, (short) Math.round(shoe.penetration() * 10_000));
+
+		int card = at + CARDS;
+		for (int h = 0; h < engine.handCount(seat); h++) {
+			Hand player = engine.playerHand(seat, h);
+			for (int i = 0; i < player.size() && card < at + CARDS + playerCards; i++) {
+				buffer.put(card++, (byte) player.ordinalAt(i));
+			}
+		}
+		for (int i = 0; i < dealerCards; i++) {
+			buffer.put(card++, (byte) dealer.ordinalAt(i));
+		}
+		while (card < at + RULES) {
+			buffer.put(card++, (byte) 0);
+		}
+		buffer.putShort(at + RULES, (short) engine.rules().code());
+		buffer.position(at + RECORD_SIZE);
+
+		if (!buffer.hasRemaining()) {
+			try {
+				flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the records gathered so far to the file.
+	 * @throws IOException if they cannot be written.
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the remaining records and closes the file.
+	 * @throws IOException if they cannot be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+}
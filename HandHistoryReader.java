@@ -0,0 +1,193 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HandHistoryReader.java
+ *
+ * <code>HandHistoryReader</code> maps a log written by
+ * <code>HandHistory</code> into memory and reads the fields of any record
+ * in place, without copying or allocating. The file is mapped in windows
+ * of 1 GiB so logs of any length can be read. A record cut short by a
+ * crash at the end of the file is ignored.
+ * <pre>
+ *     java HandHistoryReader file   print a summary of every hand in the log
+ * </pre>
+ */
+public class HandHistoryReader implements Closeable {
+
+	/** Records in each mapped window, a power of two. */
+	private static final int WINDOW_SHIFT = 24;
+	private static final int WINDOW_RECORDS = 1 << WINDOW_SHIFT;
+
+	/** The log file. */
+	private final FileChannel channel;
+	/** The mapped windows, in file order. */
+	private final MappedByteBuffer[] windows;
+	/** The number of whole records in the log. */
+	private final long size;
+
+
+	/**
+	 * Opens and maps a log.
+	 * @param path the log file.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 */
+	public HandHistoryReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		size = channel.size() / HandHistory.RECORD_SIZE;
+		windows = new MappedByteBuffer[(int) ((size + WINDOW_RECORDS - 1) >>> WINDOW_SHIFT)];
+
+		for (int w = 0; w < windows.length; w++) {
+			long first = (long) w << WINDOW_SHIFT;
+			long records = Math.min(WINDOW_RECORDS, size - first);
+			windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, first * HandHistory.RECORD_SIZE, records * HandHistory.RECORD_SIZE);
+			windows[w].order(HandHistory.ORDER);
+		}
+	}
+
+	/** @return the number of records in the log. */
+	public long size() {
+		return size;
+	}
+
+	private MappedByteBuffer window(long record) {
+		return windows[(int) (record >>> WINDOW_SHIFT)];
+	}
+
+	private static int offset(long record, int field) {
+		return (int) (record & (WINDOW_RECORDS - 1)) * HandHistory.RECORD_SIZE + field;
+	}
+
+	/** @return the seed of the shoe the round was dealt from, or 0 if it was unseeded. */
+	public long seed(long record) {
+		return window(record).getLong(offset(record, HandHistory.SEED));
+	}
+
+	/** @return the amount bet on the hand, in minor units. */
+	public int bet(long record) {
+		return window(record).getInt(offset(record, HandHistory.BET));
+	}
+
+	/** @return the amount paid back to the player, stake included, in minor units. */
+	public int payout(long record) {
+		return window(record).getInt(offset(record, HandHistory.PAYOUT));
+	}
+
+	/** @return the player's money after the round, in minor units. */
+	public int playerMoney(long record) {
+		return window(record).getInt(offset(record, HandHistory.MONEY));
+	}
+
+	/** @return the ordinal of the round's <code>BlackjackEngine.Outcome</code>. */
+	public int outcome(long record) {
+		return window(record).get(offset(record, HandHistory.OUTCOME));
+	}
+
+	/** @return the seat the hand was played from. */
+	public int seat(long record) {
+		return window(record).get(offset(record, HandHistory.SEAT));
+	}
+
+	/** @return the number of decks in the shoe. */
+	public int decks(long record) {
+		return window(record).get(offset(record, HandHistory.DECKS));
+	}
+
+	/** @return the fraction of the shoe dealt before the cut card comes out. */
+	public double penetration(long record) {
+		return window(record).getShort(offset(record, HandHistory.PENETRATION)) / 10_000.0;
+	}
+
+	/** @return the code of the table's <code>Rules</code>, for <code>Rules.of</code>. */
+	public int rules(long record) {
+		return window(record).getShort(offset(record, HandHistory.RULES)) & 0xFFFF;
+	}
+
+	/** @return the number of cards the player held, in all its hands. */
+	public int playerCardCount(long record) {
+		return window(record).get(offset(record, HandHistory.PLAYER_CARDS));
+	}
+
+	/** @return the number of cards the dealer held. */
+	public int dealerCardCount(long record) {
+		return window(record).get(offset(record, HandHistory.DEALER_CARDS));
+	}
+
+	/**
+	 * Accesses one of the player's cards.
+	 * @param record the index of the record.
+	 * @param i the index of the card, from 0 (the first dealt).
+	 * @return the card's ordinal.
+	 */
+	public int playerCard(long record, int i) {
+		return window(record).get(offset(record, HandHistory.CARDS + i));
+	}
+
+	/**
+	 * Accesses one of the dealer's cards.
+	 * @param record the index of the record.
+	 * @param i the index of the card, from 0 (the hole card).
+	 * @return the card's ordinal.
+	 */
+	public int dealerCard(long record, int i) {
+		return window(record).get(offset(record, HandHistory.CARDS + playerCardCount(record) + i));
+	}
+
+	/** @return the number of decisions the player made. */
+	public int actionCount(long record) {
+		return window(record).get(offset(record, HandHistory.ACTION_COUNT));
+	}
+
+	/**
+	 * Accesses one of the player's decisions.
+	 * @param record the index of the record.
+	 * @param i the index of the decision, from 0 (the first).
+	 * @return one of the <code>BlackjackEngine</code> ACTION codes.
+	 */
+	public int action(long record, int i) {
+		return (int) (window(record).getLong(offset(record, HandHistory.ACTIONS)) >>> (i * 4)) & 0xF;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Prints a summary of a log.
+	 * @param args the log file.
+	 * @throws IOException if the log cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		BlackjackEngine.Outcome[] outcomes = BlackjackEngine.Outcome.values();
+		long[] counts = new long[outcomes.length];
+		long bet = 0;
+		long payout = 0;
+		long cards = 0;
+
+		long start = System.nanoTime();
+		try (HandHistoryReader log = new HandHistoryReader(Paths.get(args[0]))) {
+			for (long i = 0; i < log.size(); i++) {
+				bet += log.bet(i);
+				payout += log.payout(i);
+				cards += log.playerCardCount(i) + log.dealerCardCount(i);
+				counts[log.outcome(i)]++;
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%d hands, %.2f cards/hand%n", log.size(), (double) cards / Math.max(1, log.size()));
+			for (int o = 0; o < outcomes.length; o++) {
+				if (counts[o] > 0) {
+					System.out.printf("%-17s %6.2f%%%n", outcomes[o], 100.0 * counts[o] / log.size());
+				}
+			}
+			System.out.printf("bet %s, paid %s, house edge %.3f%%%n", Ledger.format(bet), Ledger.format(payout), bet == 0 ? 0 : 100.0 * (bet - payout) / bet);
+			System.out.printf("read in %.2f s%n", seconds);
+		}
+	}
+}
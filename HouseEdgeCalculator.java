@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * HouseEdgeCalculator.java
+ *
+ * <code>HouseEdgeCalculator</code> works out the expected result of a
+ * hand played perfectly for the cards left in a fresh shoe, by a set of
+ * <code>Rules</code>: what a natural pays, whether the dealer hits soft
+ * 17, whether a player who reaches 21 wins at once, which first two cards
+ * may double, and whether late surrender is offered. Pairs are played as
+ * they are and never split, and insurance is never taken. Under rules
+ * that allow splitting, the house edge it gives is therefore an upper
+ * bound, not the exact edge. Splits are worth about half a percent in a
+ * six-deck shoe, so the simulator plays the same rules well below it.
+ * Every starting pair of player cards against every dealer up card
+ * (55 pairs by 10 up cards) is solved as its own fork-join task.
+ * The tasks share one cache of the player's results, and each worker
+ * thread keeps its own <code>DealerOutcomes</code>.
+ * The player's draws are taken from the unseen cards without the small
+ * adjustment the dealer having no natural makes to them.
+ */
+public class HouseEdgeCalculator {
+
+	/** The player's results, shared by every task. */
+	private final ConcurrentHashMap<CompositionKey, Double> memo = new ConcurrentHashMap<CompositionKey, Double>();
+	/** Each worker's dealer calculator. */
+	private final ThreadLocal<DealerOutcomes> dealer;
+	/** The rules every hand is played by. */
+	private final Rules rules;
+	/** The pool the work is split across. */
+	private final ForkJoinPool pool;
+
+
+	/**
+	 * Creates a new <code>HouseEdgeCalculator</code> for the default rules that uses every core.
+	 */
+	public HouseEdgeCalculator() {
+		this(Rules.DEFAULT, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new <code>HouseEdgeCalculator</code> for the default rules.
+	 * @param pool the pool to run the work in.
+	 */
+	public HouseEdgeCalculator(ForkJoinPool pool) {
+		this(Rules.DEFAULT, pool);
+	}
+
+	/**
+	 * Creates a new <code>HouseEdgeCalculator</code> instance.
+	 * @param rules the rules every hand is played by.
+	 * @param pool the pool to run the work in.
+	 */
+	public HouseEdgeCalculator(Rules rules, ForkJoinPool pool) {
+		this.rules = rules;
+		this.pool = pool;
+		this.dealer = ThreadLocal.withInitial(() -> new DealerOutcomes(rules));
+	}
+
+	/**
+	 * Works out the expected result of one hand dealt from a fresh shoe,
+	 * with pairs never split.
+	 * @param decks the number of decks in the shoe.
+	 * @return the expected win (positive) or loss (negative) per unit bet;
+	 *         a lower bound on it when the rules allow splitting.
+	 */
+	public double expectedValue(int decks) {
+		int[] counts = new int[11];
+		for (int v = 1; v <= 9; v++) {
+			counts[v] = 4 * decks;
+		}
+		counts[10] = 16 * decks;
+
+		List<Start> starts = new ArrayList<Start>();
+		for (int first = 1; first <= 10; first++) {
+			for (int second = first; second <= 10; second++) {
+				for (int up = 1; up <= 10; up++) {
+					starts.add(new Start(first, second, up, counts));
+				}
+			}
+		}
+
+		return pool.invoke(new RecursiveTask<Double>() {
+			@Override
+			protected Double compute() {
+				double ev = 0;
+				for (Start start : invokeAll(starts)) {
+					ev += start.join();
+				}
+				return ev;
+			}
+		});
+	}
+
+	/**
+	 * One starting pair against one up card, weighted by how likely it is to be dealt.
+	 */
+	@SuppressWarnings("serial")
+	private class Start extends RecursiveTask<Double> {
+		private final int first;
+		private final int second;
+		private final int up;
+		private final int[] counts;
+
+		Start(int first, int second, int up, int[] counts) {
+			this.first = first;
+			this.second = second;
+			this.up = up;
+			this.counts = counts.clone();
+		}
+
+		@Override
+		protected Double compute() {
+			int remaining = 0;
+			for (int v = 1; v <= 10; v++) {
+				remaining += counts[v];
+			}
+
+			// the chance of this deal, in either order for the player's cards
+			double p = (double) counts[first] / remaining;
+			counts[first]--;
+			p *= (double) counts[second] / (remaining - 1);
+			counts[second]--;
+			p *= (double) counts[up] / (remaining - 2);
+			counts[up]--;
+			if (first != second) {
+				p *= 2;
+			}
+			remaining -= 3;
+
+			double dealerNatural = up == 1 ? (double) counts[10] / remaining
+				: up == 10 ? (double) counts[1] / remaining : 0;
+
+			int hard = first + second;
+			boolean ace = first == 1 || second == 1;
+			if (ace && hard == 11) {
+				// a natural pays what the rules say unless the dealer has one too
+				return p * (1 - dealerNatural) * net(Rules.NATURAL);
+			}
+
+			// once the dealer has no natural, the first two cards may also double or surrender
+			double ev = best(hard, ace, up, counts, CompositionKey.pack(counts), remaining);
+			int total = (ace && hard <= 11) ? hard + 10 : hard;
+			if (rules.canDouble(total, ace && hard <= 11)) {
+				ev = Math.max(ev, doubled(hard, ace, up, counts, remaining));
+			}
+			if (rules.surrender()) {
+				ev = Math.max(ev, net(Rules.SURRENDER));
+			}
+			return p * (-dealerNatural + (1 - dealerNatural) * ev);
+		}
+	}
+
+	/**
+	 * The net result per unit bet of a kind of settlement.
+	 */
+	private double net(int kind) {
+		// payouts are exact for a stake of ten
+		return rules.payout(kind, 10) / 10.0 - 1;
+	}
+
+	/**
+	 * The expected result of standing on a total.
+	 */
+	private double stand(int total, int up, int[] counts) {
+		double[] chances = new double[3];
+		DealerOutcomes.standChances(rules, total, dealer.get().distribution(up, counts, true), chances);
+		return chances[0] - chances[2];
+	}
+
+	/**
+	 * The expected result of doubling a hand and taking one card, per unit of the original bet.
+	 */
+	private double doubled(int hard, boolean ace, int up, int[] counts, int remaining) {
+		double ev = 0;
+		for (int v = 1; v <= 10; v++) {
+			if (counts[v] == 0) {
+				continue;
+			}
+			double p = (double) counts[v] / remaining;
+			int nextHard = hard + v;
+			boolean nextAce = ace || v == 1;
+			int nextTotal = (nextAce && nextHard <= 11) ? nextHard + 10 : nextHard;
+
+			if (nextHard > 21) {
+				ev -= p;
+			} else if (nextTotal == 21 && rules.twentyOneWins()) {
+				ev += p;
+			} else {
+				counts[v]--;
+				ev += p * stand(nextTotal, up, counts);
+				counts[v]++;
+			}
+		}
+		return 2 * ev;
+	}
+
+	/**
+	 * The expected result of playing on perfectly from a hand under 21.
+	 */
+	private double best(int hard, boolean ace, int up, int[] counts, long packed, int remaining) {
+		int state = (up << 6) | (hard << 1) | (ace ? 1 : 0);
+		CompositionKey key = new CompositionKey(packed, state);
+		Double cached = memo.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		int total = (ace && hard <= 11) ? hard + 10 : hard;
+		double stand = stand(total, up, counts);
+
+		double hit = 0;
+		if (remaining > 0) {
+			for (int v = 1; v <= 10; v++) {
+				if (counts[v] == 0) {
+					continue;
+				}
+				double p = (double) counts[v] / remaining;
+				int nextHard = hard + v;
+				boolean nextAce = ace || v == 1;
+				int nextTotal = (nextAce && nextHard <= 11) ? nextHard + 10 : nextHard;
+
+				if (nextHard > 21) {
+					hit -= p;
+				} else if (nextTotal == 21 && rules.twentyOneWins()) {
+					hit += p;
+				} else {
+					counts[v]--;
+					hit += p * best(nextHard, nextAce, up, counts, packed - CompositionKey.unit(v), remaining - 1);
+					counts[v]++;
+				}
+			}
+		}
+
+		double ev = Math.max(stand, hit);
+		memo.put(key, ev);
+		return ev;
+	}
+
+	/**
+	 * Works out the house edge from the command line.
+	 * @param args optionally the number of decks, then the table rules as
+	 *        <code>Rules.parse</code> reads them.
+	 */
+	public static void main(String[] args) {
+		int decks = args.length > 0 ? Integer.parseInt(args[0]) : Shoe.DEFAULT_DECKS;
+		Rules rules = args.length > 1 ? Rules.parse(args[1]) : Rules.DEFAULT;
+
+		long start = System.nanoTime();
+		double ev = new HouseEdgeCalculator(rules, ForkJoinPool.commonPool()).expectedValue(decks);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		if (rules.maxHands() > 1) {
+			// what splitting is worth is left out, so the edge can only be lower
+			System.out.printf("%d deck(s), %s: expected value at least %.6f, house edge at most %.4f%% (pairs never split, %.2f s)%n",
+				decks, rules, ev, -ev * 100, seconds);
+		} else {
+			System.out.printf("%d deck(s), %s: expected value %.6f, house edge %.4f%% (%.2f s)%n", decks, rules, ev, -ev * 100, seconds);
+		}
+	}
+}
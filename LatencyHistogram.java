@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/**
+ * LatencyHistogram.java
+ *
+ * <code>LatencyHistogram</code> counts durations in buckets that grow
+ * with the value, 32 to each power of two, so any percentile is known
+ * to within about 3% in a fixed two thousand counters however many
+ * values are recorded and however long they are. Not thread-safe;
+ * give each thread its own and merge them.
+ */
+public class LatencyHistogram {
+
+	/** Values below this get a bucket each. */
+	private static final int LINEAR = 64;
+	/** Buckets per power of two above LINEAR, as a shift. */
+	private static final int SUB_SHIFT = 5;
+	static final int BUCKETS = (64 - SUB_SHIFT) * (1 << SUB_SHIFT) + LINEAR;
+
+	/** The number of values in each bucket. */
+	private final long[] counts = new long[BUCKETS];
+	/** The number of values, and the largest. */
+	private long total;
+	private long max;
+
+
+	/**
+	 * Counts one value.
+	 * @param value the duration, in any unit; negative values count as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[bucket(value)]++;
+		total++;
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/** @return the bucket a value is counted in. */
+	static int bucket(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_SHIFT - 1;
+		return (shift << SUB_SHIFT) + (int) (value >>> shift);
+	}
+
+	/** @return the smallest value that falls in a bucket. */
+	private static long lowest(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_SHIFT) - 1;
+		return (long) (bucket - (shift << SUB_SHIFT)) << shift;
+	}
+
+	/**
+	 * Adds values already sorted into a bucket, as a <code>Metric</code> keeps them.
+	 * @param bucket the bucket.
+	 * @param count the number of values in it.
+	 * @param largest the largest value recorded, if larger than any so far.
+	 */
+	void add(int bucket, long count, long largest) {
+		counts[bucket] += count;
+		total += count;
+		max = Math.max(max, largest);
+	}
+
+	/**
+	 * Finds a percentile.
+	 * @param percent from 0 to 100.
+	 * @return a value no more than about 3% below the one at that
+	 *         percentile, or 0 if nothing has been recorded.
+	 */
+	public long percentile(double percent) {
+		long rank = (long) Math.ceil(total * percent / 100);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if (seen >= rank && seen > 0) {
+				return Math.min(lowest(b), max);
+			}
+		}
+		return max;
+	}
+
+	/** @return the number of values recorded. */
+	public long count() {
+		return total;
+	}
+
+	/** @return the largest value recorded. */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * Adds another histogram's values to this one.
+	 * @param other the histogram to add.
+	 * @return this histogram.
+	 */
+	public LatencyHistogram merge(LatencyHistogram other) {
+		for (int b = 0; b < BUCKETS; b++) {
+			counts[b] += other.counts[b];
+		}
+		total += other.total;
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	/**
+	 * Forgets every value recorded.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		total = 0;
+		max = 0;
+	}
+}
@@ -0,0 +1,334 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ledger.java
+ *
+ * <code>Ledger</code> keeps the bankroll of every seat in long minor units,
+ * MINOR_UNITS to the chip, so every payout is exact: a blackjack on an odd
+ * bet pays its half chip. Money only moves in whole transactions: a stake
+ * goes from an account to the house, a payout from the house back to the
+ * account, and deposits and withdrawals change what has been put in.
+ * <p>
+ * Accounts are split among stripes, each with its own lock and its own
+ * share of the house, so tables on different threads seldom wait for each
+ * other. An audit adds up every account and the house at a single instant
+ * without stopping play, unless play keeps changing the totals while they
+ * are being added up. The accounts and the house always add up to what
+ * has been deposited.
+ */
+public class Ledger {
+
+	/** Minor units in one chip. */
+	public static final long MINOR_UNITS = 100;
+
+	/** Accounts are kept in pages of this many, a power of two. */
+	private static final int PAGE_SHIFT = 10;
+	private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+	/** The accounts mapped to one lock, and their share of the house. */
+	private static final class Stripe {
+		final StampedLock lock = new StampedLock();
+		/** Money staked by the stripe's accounts and not paid back. */
+		long house;
+		/** Money deposited into the stripe's accounts, less withdrawals. */
+		long funded;
+	}
+
+	/** The stripes; an account belongs to stripes[account & mask]. */
+	private final Stripe[] stripes;
+	private final int mask;
+	/** false if only one thread ever uses the ledger, which then takes no locks. */
+	private final boolean shared;
+	/** The balance of every account, in pages that never move once made. */
+	private volatile long[][] pages = new long[1][];
+	/** One more than the highest account ever opened. */
+	private volatile int size;
+	/** Closed accounts, to be opened again before new ones. */
+	private int[] free = new int[8];
+	private int freeCount;
+
+
+	/**
+	 * Creates a new <code>Ledger</code> used by one thread only, which
+	 * takes no locks.
+	 */
+	public Ledger() {
+		this(1, false);
+	}
+
+	/**
+	 * Creates a new <code>Ledger</code> shared by any number of threads.
+	 * @param stripes the number of locks the accounts are split among;
+	 *        rounded up to a power of two.
+	 */
+	public Ledger(int stripes) {
+		this(stripes, true);
+	}
+
+	private Ledger(int stripes, boolean shared) {
+		this.shared = shared;
+		int n = 1;
+		while (n < stripes) {
+			n <<= 1;
+		}
+		this.stripes = new Stripe[n];
+		for (int i = 0; i < n; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		this.mask = n - 1;
+		this.pages[0] = new long[PAGE_SIZE];
+	}
+
+	/**
+	 * Opens an account.
+	 * @param balance the money deposited into it, in minor units.
+	 * @return the account's number.
+	 */
+	public int open(long balance) {
+		int account;
+		synchronized (this) {
+			if (freeCount > 0) {
+				account = free[--freeCount];
+			} else {
+				account = size;
+				int page = account >>> PAGE_SHIFT;
+				if (page == pages.length) {
+					long[][] grown = Arrays.copyOf(pages, page * 2);
+					grown[page] = new long[PAGE_SIZE];
+					pages = grown;
+				} else if (pages[page] == null) {
+					pages[page] = new long[PAGE_SIZE];
+				}
+				size = account + 1;
+			}
+		}
+		deposit(account, balance);
+		return account;
+	}
+
+	/**
+	 * Withdraws everything from an account and closes it.
+	 * @param account the account.
+	 * @return the money withdrawn, in minor units.
+	 */
+	public long close(int account) {
+		Stripe stripe = stripes[account & mask];
+		long[] page = pages[account >>> PAGE_SHIFT];
+		int i = account & (PAGE_SIZE - 1);
+		long balance;
+		long stamp = lock(stripe);
+		try {
+			balance = page[i];
+			page[i] = 0;
+			stripe.funded -= balance;
+		} finally {
+			unlock(stripe, stamp);
+		}
+		synchronized (this) {
+			if (freeCount == free.length) {
+				free = Arrays.copyOf(free, freeCount * 2);
+			}
+			free[freeCount++] = account;
+		}
+		return balance;
+	}
+
+	/**
+	 * Looks up an account's balance.
+	 * @param account the account.
+	 * @return the money in it, in minor units.
+	 */
+	public long balance(int account) {
+		if (!shared) {
+			return pages[account >>> PAGE_SHIFT][account & (PAGE_SIZE - 1)];
+		}
+		StampedLock lock = stripes[account & mask].lock;
+		long[] page = pages[account >>> PAGE_SHIFT];
+		int i = account & (PAGE_SIZE - 1);
+		long stamp = lock.tryOptimisticRead();
+		long balance = page[i];
+		if (!lock.validate(stamp)) {
+			stamp = lock.readLock();
+			try {
+				balance = page[i];
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		return balance;
+	}
+
+	/**
+	 * Puts money into an account, or takes it out.
+	 * @param account the account.
+	 * @param amount the money to put in, in minor units; negative to take out.
+	 * @throws IllegalArgumentException if more would be taken out than there is.
+	 */
+	public void deposit(int account, long amount) {
+		Stripe stripe = stripes[account & mask];
+		long[] page = pages[account >>> PAGE_SHIFT];
+		int i = account & (PAGE_SIZE - 1);
+		long stamp = lock(stripe);
+		try {
+			if (page[i] + amount < 0) {
+				throw new IllegalArgumentException("withdrawal of " + format(-amount) + " exceeds " + format(page[i]));
+			}
+			page[i] += amount;
+			stripe.funded += amount;
+		} finally {
+			unlock(stripe, stamp);
+		}
+	}
+
+	/**
+	 * Moves a bet from an account to the house.
+	 * @param account the account.
+	 * @param amount the bet, in minor units.
+	 * @throws IllegalArgumentException if the amount is negative or more
+	 *         than the account holds.
+	 */
+	public void stake(int account, long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("negative bet: " + format(amount));
+		}
+		Stripe stripe = stripes[account & mask];
+		long[] page = pages[account >>> PAGE_SHIFT];
+		int i = account & (PAGE_SIZE - 1);
+		long stamp = lock(stripe);
+		try {
+			if (page[i] < amount) {
+				throw new IllegalArgumentException("bet of " + format(amount) + " exceeds " + format(page[i]));
+			}
+			page[i] -= amount;
+			stripe.house += amount;
+		} finally {
+			unlock(stripe, stamp);
+		}
+	}
+
+	/**
+	 * Moves a payout, stake included, from the house to an account.
+	 * @param account the account.
+	 * @param amount the payout, in minor units.
+	 */
+	public void pay(int account, long amount) {
+		Stripe stripe = stripes[account & mask];
+		long[] page = pages[account >>> PAGE_SHIFT];
+		int i = account & (PAGE_SIZE - 1);
+		long stamp = lock(stripe);
+		try {
+			page[i] += amount;
+			stripe.house -= amount;
+		} finally {
+			unlock(stripe, stamp);
+		}
+	}
+
+	/**
+	 * Adds up every account and the house at one instant. Play carries on
+	 * while the totals are read; only if it changes them in the meantime
+	 * is it held up, stripe by stripe, for a second reading.
+	 * @return the totals.
+	 */
+	public Audit audit() {
+		if (!shared) {
+			return sum();
+		}
+		long[] stamps = new long[stripes.length];
+		for (int s = 0; s < stripes.length; s++) {
+			stamps[s] = stripes[s].lock.tryOptimisticRead();
+		}
+		Audit audit = sum();
+		boolean valid = true;
+		for (int s = 0; s < stripes.length; s++) {
+			valid &= stamps[s] != 0 && stripes[s].lock.validate(stamps[s]);
+		}
+		if (valid) {
+			return audit;
+		}
+
+		for (int s = 0; s < stripes.length; s++) {
+			stamps[s] = stripes[s].lock.readLock();
+		}
+		try {
+			return sum();
+		} finally {
+			for (int s = 0; s < stripes.length; s++) {
+				stripes[s].lock.unlockRead(stamps[s]);
+			}
+		}
+	}
+
+	private long lock(Stripe stripe) {
+		return shared ? stripe.lock.writeLock() : 0;
+	}
+
+	private void unlock(Stripe stripe, long stamp) {
+		if (shared) {
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	private Audit sum() {
+		// size first: a page is in place before size counts an account in it
+		int size = this.size;
+		long[][] pages = this.pages;
+		long accounts = 0;
+		for (int first = 0; first < size; first += PAGE_SIZE) {
+			long[] page = pages[first >>> PAGE_SHIFT];
+			int end = Math.min(PAGE_SIZE, size - first);
+			for (int i = 0; i < end; i++) {
+				accounts += page[i];
+			}
+		}
+		long house = 0;
+		long funded = 0;
+		for (Stripe stripe : stripes) {
+			house += stripe.house;
+			funded += stripe.funded;
+		}
+		return new Audit(accounts, house, funded);
+	}
+
+	/**
+	 * Writes an amount of money in chips.
+	 * @param minor the amount, in minor units.
+	 * @return the amount, with two decimals if it is not a whole number of chips.
+	 */
+	public static String format(long minor) {
+		if (minor % MINOR_UNITS == 0) {
+			return Long.toString(minor / MINOR_UNITS);
+		}
+		return String.format("%s%d.%02d", minor < 0 ? "-" : "", Math.abs(minor / MINOR_UNITS), Math.abs(minor % MINOR_UNITS));
+	}
+
+	/**
+	 * The totals of a ledger at one instant, in minor units.
+	 */
+	public static final class Audit {
+		/** The money in all the accounts. */
+		public final long accounts;
+		/** The money the house has won, less what it has paid out. */
+		public final long house;
+		/** The money deposited, less what has been withdrawn. */
+		public final long funded;
+
+		Audit(long accounts, long house, long funded) {
+			this.accounts = accounts;
+			this.house = house;
+			this.funded = funded;
+		}
+
+		/** @return true if the accounts and the house add up to what was deposited. */
+		public boolean isBalanced() {
+			return accounts + house == funded;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("accounts %s, house %s, funded %s%s",
+				format(accounts), format(house), format(funded), isBalanced() ? "" : ", UNBALANCED");
+		}
+	}
+}
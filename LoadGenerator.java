@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * LoadGenerator.java
+ *
+ * <code>LoadGenerator</code> drives a <code>GameServer</code> with many
+ * tables at once, each played round after round with basic strategy, and
+ * reports how many actions the server carried out per second and how long
+ * each took from the request being sent to its response arriving. Every
+ * table has one request in flight at a time; the requests of all the
+ * tables on a connection are sent together.
+ * <pre>
+ *     java LoadGenerator [host port] [connections] [tables per connection] [seconds]
+ * </pre>
+ * With no host, or "-", a server is started in the same process.
+ */
+public class LoadGenerator {
+
+	/** The money each table is opened with, enough never to run out. */
+	private static final int MONEY = 1_000_000_000;
+	/** The amount bet on each hand. */
+	private static final int BET = 10;
+	/** Time spent warming up before measuring, in nanoseconds. */
+	private static final long WARMUP_NANOS = 2_000_000_000L;
+
+	/** The latency of every action since measuring started, in nanoseconds. */
+	private final LatencyHistogram latency = new LatencyHistogram();
+	/** Rounds finished and requests refused since measuring started. */
+	private long rounds;
+	private long errors;
+
+
+	/**
+	 * One connection and the tables it plays.
+	 */
+	private class Client {
+		private final SocketChannel channel;
+		private final ByteBuffer in;
+		private final ByteBuffer out;
+		/** When each table's request in flight was sent. */
+		private final long[] sent;
+
+		Client(SocketChannel channel, int tables) {
+			this.channel = channel;
+			this.in = ByteBuffer.allocateDirect(tables * GameServer.RESPONSE_SIZE);
+			this.out = ByteBuffer.allocateDirect(tables * GameServer.REQUEST_SIZE);
+			this.sent = new long[tables];
+			for (int t = 0; t < tables; t++) {
+				send(GameServer.OP_OPEN, 1, t, MONEY, System.nanoTime());
+			}
+		}
+
+		private void send(byte op, int seat, int table, int amount, long now) {
+			out.put(op);
+			out.put((byte) seat);
+			out.putShort((short) table);
+			out.putInt(amount);
+			sent[table] = now;
+		}
+
+		/** Reads the responses that have arrived and answers each with the table's next action. */
+		void read() throws IOException {
+			if (channel.read(in) < 0) {
+				throw new IOException("server closed the connection");
+			}
+			long now = System.nanoTime();
+			in.flip();
+			while (in.remaining() >= GameServer.RESPONSE_SIZE) {
+				int at = in.position();
+				in.position(at + GameServer.RESPONSE_SIZE);
+				byte status = in.get(at);
+				byte op = in.get(at + 1);
+				int table = in.getShort(at + 2) & 0xFFFF;
+				latency.record(now - sent[table]);
+				if (status != GameServer.STATUS_OK) {
+					errors++;
+					continue;
+				}
+
+				boolean inPlay = (in.get(at + 7) & GameServer.FLAG_IN_PLAY) != 0;
+				if (op == GameServer.OP_OPEN) {
+					send(GameServer.OP_BET, 0, table, BET, now);
+				} else if (op == GameServer.OP_BET) {
+					send(GameServer.OP_DEAL, 0, table, 0, now);
+				} else if (!inPlay) {
+					rounds++;
+					send(GameServer.OP_BET, 0, table, BET, now);
+				} else if ((in.get(at + 7) & GameServer.FLAG_INSURANCE) != 0) {
+					send(GameServer.OP_INSURE, 0, table, 0, now);
+				} else {
+					boolean soft = (in.get(at + 7) & GameServer.FLAG_SOFT) != 0;
+					int upValue = Card.points(in.get(at + 10));
+					byte action = BasicStrategy.INSTANCE.shouldHit(in.get(at + 8), soft, upValue) ? GameServer.OP_HIT : GameServer.OP_STAND;
+					send(action, 0, table, 0, now);
+				}
+			}
+			in.compact();
+		}
+
+		void write() throws IOException {
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			out.clear();
+		}
+	}
+
+	/**
+	 * Plays the tables until the time is up.
+	 * @return the number of seconds measured.
+	 */
+	private double run(InetSocketAddress address, int connections, int tables, long nanos) throws IOException {
+		Selector selector = Selector.open();
+		Client[] clients = new Client[connections];
+		for (int c = 0; c < connections; c++) {
+			SocketChannel channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+			channel.configureBlocking(false);
+			clients[c] = new Client(channel, tables);
+			channel.register(selector, SelectionKey.OP_READ, clients[c]);
+			clients[c].write();
+		}
+
+		long start = System.nanoTime();
+		long measured = start + WARMUP_NANOS;
+		long end = measured + nanos;
+		boolean measuring = false;
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			if (!measuring && now >= measured) {
+				measuring = true;
+				latency.clear();
+				rounds = 0;
+				errors = 0;
+				measured = now;
+			}
+			selector.select(100);
+			for (SelectionKey key : selector.selectedKeys()) {
+				Client client = (Client) key.attachment();
+				client.read();
+				client.write();
+			}
+			selector.selectedKeys().clear();
+		}
+
+		for (Client client : clients) {
+			client.channel.close();
+		}
+		selector.close();
+		return (now - measured) / 1e9;
+	}
+
+	/**
+	 * Runs a load test from the command line.
+	 * @param args the server's host and port, the number of connections,
+	 *        the number of tables on each and the number of seconds to measure.
+	 * @throws IOException if the server cannot be reached.
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean local = args.length < 2 || args[0].equals("-");
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int tables = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+		GameServer server = null;
+		InetSocketAddress address;
+		if (local) {
+			server = new GameServer(0, 6, Runtime.getRuntime().availableProcessors(), GameServer.DEFAULT_MAX_TABLES);
+			address = new InetSocketAddress("localhost", server.port());
+		} else {
+			address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+		}
+
+		LoadGenerator load = new LoadGenerator();
+		double measured;
+		try {
+			measured = load.run(address, connections, tables, seconds * 1_000_000_000L);
+			if (server != null) {
+				System.out.println("ledger: " + server.ledger().audit());
+			}
+		} finally {
+			if (server != null) {
+				server.close();
+			}
+		}
+
+		LatencyHistogram l = load.latency;
+		System.out.printf("%d tables on %d connections, %.1f s%n", connections * tables, connections, measured);
+		System.out.printf("%.0f actions/s, %.0f rounds/s, %d refused%n", l.count() / measured, load.rounds / measured, load.errors);
+		System.out.printf("latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+			l.percentile(50) / 1e3, l.percentile(99) / 1e3, l.percentile(99.9) / 1e3, l.max() / 1e3);
+	}
+}
@@ -1,6 +1,34 @@
 public class Main {
-	public static void main(String[] args) {
+	public static void main(String[] args) throws java.io.IOException {
+		Metrics.start();
+		if (args.length > 0 && args[0].equals("simulate")) {
+			Simulator.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("exact")) {
+			HouseEdgeCalculator.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		if (args.length > 0 && args[0].equals("history")) {
+			HandHistoryReader.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("replay")) {
+			Replay.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		if (args.length > 0 && args[0].equals("serve")) {
+			GameServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("load")) {
+			LoadGenerator.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		CardGameGUI gui = new CardGameGUI();
 		gui.displayGame();
 	}
-}
\ No newline at end of file
+}
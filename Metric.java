@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metric.java
+ *
+ * <code>Metric</code> counts one kind of event and, for events that take
+ * time, how long they took, in the buckets of a <code>LatencyHistogram</code>.
+ * Any number of threads may record at once without locking or allocating,
+ * at the cost of an atomic add or two. A reading is not taken at a single
+ * instant, which can only leave out the last few events.
+ */
+public class Metric implements MetricMXBean {
+
+	/** The name the metric is reported and registered under. */
+	private final String name;
+	/** The events counted, timed or not. */
+	private final LongAdder events = new LongAdder();
+	/** The number of timed events in each bucket, and the longest. */
+	private final AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+
+	/**
+	 * Creates a new <code>Metric</code> instance. Metrics are made and
+	 * reported by <code>Metrics</code>.
+	 * @param name the name to report it under.
+	 */
+	Metric(String name) {
+		this.name = name;
+	}
+
+	/** @return the name the metric is reported under. */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Counts one event.
+	 */
+	public void mark() {
+		events.increment();
+	}
+
+	/**
+	 * Counts a number of events.
+	 * @param n the number of events.
+	 */
+	public void mark(long n) {
+		events.add(n);
+	}
+
+	/**
+	 * Records the duration of an event already counted, e.g. one of every
+	 * few that are timed.
+	 * @param nanos the duration, in nanoseconds.
+	 */
+	public void sample(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.getAndIncrement(LatencyHistogram.bucket(nanos));
+		long longest = max.get();
+		while (nanos > longest && !max.compareAndSet(longest, nanos)) {
+			longest = max.get();
+		}
+	}
+
+	/**
+	 * Counts one event and records its duration.
+	 * @param nanos the duration, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		mark();
+		sample(nanos);
+	}
+
+	/** @return a copy of the durations recorded so far. */
+	public LatencyHistogram histogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+			long count = counts.get(b);
+			if (count > 0) {
+				histogram.add(b, count, 0);
+			}
+		}
+		histogram.add(0, 0, max.get());
+		return histogram;
+	}
+
+	@Override
+	public long getCount() {
+		return events.sum();
+	}
+
+	@Override
+	public double getMeanRate() {
+		return getCount() / Metrics.uptimeSeconds();
+	}
+
+	@Override
+	public long getTimed() {
+		return histogram().count();
+	}
+
+	@Override
+	public long getP50() {
+		return histogram().percentile(50);
+	}
+
+	@Override
+	public long getP99() {
+		return histogram().percentile(99);
+	}
+
+	@Override
+	public long getP999() {
+		return histogram().percentile(99.9);
+	}
+
+	@Override
+	public long getMax() {
+		return max.get();
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * MetricMXBean.java
+ *
+ * The management interface of a <code>Metric</code>, as it appears over
+ * JMX. Durations are in nanoseconds.
+ */
+public interface MetricMXBean {
+
+	/** @return the number of events counted. */
+	long getCount();
+
+	/** @return the events per second since the program started. */
+	double getMeanRate();
+
+	/** @return the number of events whose duration was recorded. */
+	long getTimed();
+
+	/** @return the median duration. */
+	long getP50();
+
+	/** @return the 99th percentile duration. */
+	long getP99();
+
+	/** @return the 99.9th percentile duration. */
+	long getP999();
+
+	/** @return the longest duration. */
+	long getMax();
+}
@@ -0,0 +1,149 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics.java
+ *
+ * <code>Metrics</code> holds every metric the game records, always on:
+ * the engine's actions, dealer play and hands settled, reshuffles, and
+ * the GUI's repaints, packs and event thread stalls. <code>start</code>
+ * registers each one as an MBean named
+ * <code>blackjack:type=Metric,name=</code><i>name</i> and, if METRICS_PROPERTY
+ * is set, prints all of them every so many seconds.
+ * <p>
+ * The engine times only one action in SAMPLE, as reading the clock twice
+ * costs more than the rest of a typical action, and counts each one it
+ * times as SAMPLE of its kind, so its action counts are estimates. Hands
+ * settled are counted exactly, but handed on only when an action is
+ * timed, so they run a few rounds behind per table.
+ */
+public final class Metrics {
+
+	/** The system property giving the seconds between printed reports. */
+	public static final String METRICS_PROPERTY = "blackjack.metrics";
+	/** The engine times one action in this many. */
+	public static final int SAMPLE = 64;
+
+	/** Every metric, in the order they are reported. */
+	private static final List<Metric> ALL = new ArrayList<>();
+	/** When the class was loaded, for mean rates. */
+	private static final long START = System.nanoTime();
+
+	/** The kinds of engine event, indices into ENGINE. */
+	static final int BET = 0;
+	static final int DEAL = 1;
+	static final int HIT = 2;
+	static final int STAND = 3;
+	static final int DEALER = 4;
+	static final int HANDS = 5;
+	/** The engine's actions, dealer play and hands settled, by kind. */
+	static final Metric[] ENGINE = {
+		metric("engine.bet"), metric("engine.deal"), metric("engine.hit"), metric("engine.stand"),
+		metric("engine.dealer"), metric("engine.hands"),
+	};
+	/** Shuffles of a whole shoe, between rounds or in the middle of one. */
+	public static final Metric SHUFFLES = metric("shoe.shuffle");
+	/** Repaints of the table, laying out the window again, and time the event thread was held up. */
+	public static final Metric REPAINT = metric("gui.repaint");
+	public static final Metric PACK = metric("gui.pack");
+	public static final Metric EDT_STALL = metric("gui.edt.stall");
+
+	private static boolean started;
+
+
+	private Metrics() {
+	}
+
+	private static Metric metric(String name) {
+		Metric metric = new Metric(name);
+		ALL.add(metric);
+		return metric;
+	}
+
+	/** @return the seconds since the metrics were made. */
+	static double uptimeSeconds() {
+		return Math.max(1e-9, (System.nanoTime() - START) / 1e9);
+	}
+
+	/**
+	 * Registers every metric with the platform MBean server and starts the
+	 * printed reports if METRICS_PROPERTY asks for them. Does nothing the
+	 * second time.
+	 */
+	public static synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (Metric metric : ALL) {
+			try {
+				server.registerMBean(metric, new ObjectName("blackjack:type=Metric,name=" + metric.name()));
+			} catch (JMException e) {
+				System.err.println("metric " + metric.name() + " not registered: " + e);
+			}
+		}
+
+		Integer seconds = Integer.getInteger(METRICS_PROPERTY);
+		if (seconds != null && seconds > 0) {
+			Thread reporter = new Thread(() -> report(seconds * 1000L), "metrics");
+			reporter.setDaemon(true);
+			reporter.start();
+		}
+	}
+
+	/** Prints every metric to standard error, forever. */
+	private static void report(long millis) {
+		long[] last = new long[ALL.size()];
+		long then = System.nanoTime();
+		while (true) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long now = System.nanoTime();
+			System.err.print(format(last, (now - then) / 1e9));
+			then = now;
+		}
+	}
+
+	/**
+	 * Writes every metric as a table, with rates since the program started.
+	 * @return the report.
+	 */
+	public static String format() {
+		return format(new long[ALL.size()], uptimeSeconds());
+	}
+
+	/**
+	 * Writes every metric as a table: counts and rates over a period, and
+	 * durations since the start.
+	 * @param last each metric's count at the start of the period, updated
+	 *        to its count now.
+	 * @param seconds the length of the period.
+	 */
+	private static String format(long[] last, double seconds) {
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-16s %12s %10s %10s %10s %10s %10s%n",
+			"metric", "count", "rate/s", "p50 us", "p99 us", "p99.9 us", "max us"));
+		for (int m = 0; m < ALL.size(); m++) {
+			Metric metric = ALL.get(m);
+			long count = metric.getCount();
+			LatencyHistogram h = metric.histogram();
+			out.append(String.format("%-16s %12d %10.1f", metric.name(), count, (count - last[m]) / seconds));
+			if (h.count() > 0) {
+				out.append(String.format(" %10.2f %10.2f %10.2f %10.2f",
+					h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.percentile(99.9) / 1e3, h.max() / 1e3));
+			}
+			out.append(System.lineSeparator());
+			last[m] = count;
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * PlayerStrategy.java
+ *
+ * <code>PlayerStrategy</code> decides whether an automated player hits or stays,
+ * and, where the table's rules allow them, whether it surrenders, splits a
+ * pair or doubles. A strategy that only decides hitting never does the others.
+ */
+public interface PlayerStrategy {
+
+	/**
+	 * Hits below 17 and stays otherwise, the same rule the dealer plays by.
+	 */
+	PlayerStrategy MIMIC_DEALER = (playerTotal, soft, dealerUpValue) -> playerTotal <= 16;
+
+	/**
+	 * Decides the player's next action.
+	 * @param playerTotal the point total of the player's hand.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param dealerUpValue the point value of the dealer's face up card, 1 (ace) to 10.
+	 * @return true to hit, false to stay.
+	 */
+	boolean shouldHit(int playerTotal, boolean soft, int dealerUpValue);
+
+	/**
+	 * Decides whether to double a hand's first two cards, when the rules allow it.
+	 * @param playerTotal the point total of the player's hand.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param dealerUpValue the point value of the dealer's face up card, 1 (ace) to 10.
+	 * @return true to double.
+	 */
+	default boolean shouldDouble(int playerTotal, boolean soft, int dealerUpValue) {
+		return false;
+	}
+
+	/**
+	 * Decides whether to split a pair, when the rules allow it.
+	 * @param pairValue the point value of each card of the pair, 1 (aces) to 10.
+	 * @param dealerUpValue the point value of the dealer's face up card, 1 (ace) to 10.
+	 * @return true to split.
+	 */
+	default boolean shouldSplit(int pairValue, int dealerUpValue) {
+		return false;
+	}
+
+	/**
+	 * Decides whether to give up half the bet instead of playing the first
+	 * two cards, when the rules allow it.
+	 * @param playerTotal the point total of the player's hand.
+	 * @param soft true if an ace in the player's hand is counted as 11.
+	 * @param dealerUpValue the point value of the dealer's face up card, 1 (ace) to 10.
+	 * @return true to surrender.
+	 */
+	default boolean shouldSurrender(int playerTotal, boolean soft, int dealerUpValue) {
+		return false;
+	}
+
+	/**
+	 * Plays a seat's whole turn: every hand of it, split or not, until the
+	 * turn passes to the next seat. Insurance must have been decided.
+	 * @param engine the table.
+	 * @param seat the seat whose turn it is.
+	 */
+	default void playTurn(BlackjackEngine engine, int seat) {
+		int upValue = engine.dealerUpCard().pointValue();
+		if (engine.canSurrender(seat)) {
+			Hand hand = engine.playerHand(seat);
+			if (shouldSurrender(hand.total(), hand.isSoft(), upValue)) {
+				engine.surrender(seat);
+				return;
+			}
+		}
+		while (engine.turn() == seat) {
+			Hand hand = engine.playerHand(seat);
+			if (engine.canSplit(seat) && shouldSplit(Card.points(hand.ordinalAt(0)), upValue)) {
+				engine.split(seat);
+			} else if (engine.canDouble(seat) && shouldDouble(hand.total(), hand.isSoft(), upValue)) {
+				engine.doubleDown(seat);
+			} else if (engine.canHit(seat) && shouldHit(hand.total(), hand.isSoft(), upValue)) {
+				engine.hit(seat);
+			} else {
+				engine.stand(seat);
+			}
+		}
+	}
+}
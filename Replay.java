@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replay.java
+ *
+ * <code>Replay</code> deals the rounds of a hand history again from the
+ * seed of the shoe they came from, playing each seat's recorded bets and
+ * decisions, and checks every settled round against the log: the cards,
+ * the outcome and the payout must all come out the same. The table plays
+ * by the rules the log recorded. The log must
+ * hold every round the shoe dealt, from the first; rounds the dealer was
+ * rigged in cannot be dealt again, and show up as a divergence.
+ * <pre>
+ *     java Replay file   replay every shoe in the log and report any divergence
+ * </pre>
+ */
+public class Replay implements RoundListener {
+
+	/** The log being replayed. */
+	private final HandHistoryReader log;
+	/** The shoe's records, in the order they were written. */
+	private final long[] records;
+	/** The table the rounds are dealt again on. */
+	private final BlackjackEngine engine;
+	/** The index in records of the current round's first seat. */
+	private int next;
+	/** true from the deal until the round is settled. */
+	private boolean dealt;
+	/** The number of rounds dealt again and found the same. */
+	private long rounds;
+	/** The cards of every hand of the seat being checked, in the order the log keeps them. */
+	private final Hand played = new Hand();
+
+
+	/**
+	 * Creates a new <code>Replay</code> of one shoe's rounds.
+	 * @param log the hand history.
+	 * @param records the indices of the shoe's records in the log, in order;
+	 *        one of the values of <code>shoes(log)</code>.
+	 * @throws IllegalArgumentException if the shoe was not seeded, or its
+	 *         rules are not ones this table knows.
+	 */
+	public Replay(HandHistoryReader log, long[] records) {
+		long first = records[0];
+		long seed = log.seed(first);
+		if (seed == 0) {
+			throw new IllegalArgumentException("the shoe was not seeded and cannot be dealt again");
+		}
+		int seats = 0;
+		for (long r : records) {
+			seats = Math.max(seats, log.seat(r) + 1);
+		}
+
+		this.log = log;
+		this.records = records;
+		Rules rules = Rules.of(log.rules(first));
+		this.engine = new BlackjackEngine(new Shoe(log.decks(first), log.penetration(first), seed), seats, 0, rules);
+		engine.addRoundListener(this);
+	}
+
+	/**
+	 * Groups the records of a log by the shoe they were dealt from.
+	 * @param log the hand history.
+	 * @return the indices of each shoe's records in order, by seed, in the
+	 *         order the shoes first appear.
+	 */
+	public static Map<Long, long[]> shoes(HandHistoryReader log) {
+		Map<Long, int[]> counts = new HashMap<>();
+		for (long i = 0; i < log.size(); i++) {
+			counts.computeIfAbsent(log.seed(i), seed -> new int[1])[0]++;
+		}
+
+		Map<Long, long[]> shoes = new LinkedHashMap<>();
+		Map<Long, int[]> filled = new HashMap<>();
+		for (long i = 0; i < log.size(); i++) {
+			long seed = log.seed(i);
+			long[] records = shoes.computeIfAbsent(seed, s -> new long[counts.get(s)[0]]);
+			records[filled.computeIfAbsent(seed, s -> new int[1])[0]++] = i;
+		}
+		return shoes;
+	}
+
+	/** @return the table the rounds are dealt on, for display. */
+	public BlackjackEngine engine() {
+		return engine;
+	}
+
+	/** @return the number of rounds dealt again and found the same. */
+	public long rounds() {
+		return rounds;
+	}
+
+	/** @return true if every round in the log has been dealt again. */
+	public boolean isDone() {
+		return !dealt && next + engine.seats() > records.length;
+	}
+
+	/**
+	 * Takes the next step of the log: every seat's bet and the deal, or
+	 * one seat's decision.
+	 * @return false if every round has already been dealt again.
+	 * @throws IllegalStateException if the round comes out differently
+	 *         from the log.
+	 */
+	public boolean step() {
+		if (isDone()) {
+			return false;
+		}
+		if (!dealt) {
+			for (int s = 0; s < engine.seats(); s++) {
+				long r = records[next + s];
+				// the money before the round: what was left, less what came back, plus the bet
+				engine.setPlayerBalance(s, (long) log.playerMoney(r) - log.payout(r) + log.bet(r));
+				engine.bet(s, (int) (openingBet(r) / Ledger.MINOR_UNITS));
+			}
+			dealt = true;
+			engine.deal();
+			return true;
+		}
+
+		// while insurance is open the seats decide on it in order, and then play in order
+		int seat = engine.turn();
+		for (int s = 0; seat < 0 && s < engine.seats(); s++) {
+			if (engine.isInsuranceOffered(s)) {
+				seat = s;
+			}
+		}
+		long r = records[next + seat];
+		int i = engine.actionCount(seat);
+		if (i >= log.actionCount(r)) {
+			throw diverged(seat, "more decisions than the log holds");
+		}
+		switch (log.action(r, i)) {
+			case BlackjackEngine.ACTION_HIT:
+				engine.hit(seat);
+				break;
+			case BlackjackEngine.ACTION_STAND:
+				engine.stand(seat);
+				break;
+			case BlackjackEngine.ACTION_DOUBLE:
+				engine.doubleDown(seat);
+				break;
+			case BlackjackEngine.ACTION_SPLIT:
+				engine.split(seat);
+				break;
+			case BlackjackEngine.ACTION_SURRENDER:
+				engine.surrender(seat);
+				break;
+			case BlackjackEngine.ACTION_INSURE:
+				engine.insure(seat, true);
+				break;
+			case BlackjackEngine.ACTION_NO_INSURANCE:
+				engine.insure(seat, false);
+				break;
+			default:
+				throw diverged(seat, "unknown decision " + log.action(r, i));
+		}
+		return true;
+	}
+
+	/**
+	 * Works out a seat's bet before it doubled, split or took insurance:
+	 * each split and double staked the bet again, and insurance half of it.
+	 * @return the opening bet in minor units.
+	 */
+	private long openingBet(long r) {
+		int halves = 2;
+		for (int i = 0; i < log.actionCount(r); i++) {
+			int action = log.action(r, i);
+			halves += action == BlackjackEngine.ACTION_SPLIT || action == BlackjackEngine.ACTION_DOUBLE ? 2
+				: action == BlackjackEngine.ACTION_INSURE ? 1 : 0;
+		}
+		return (long) log.bet(r) * 2 / halves;
+	}
+
+	/**
+	 * Plays every remaining round.
+	 * @throws IllegalStateException if a round comes out differently from the log.
+	 */
+	public void run() {
+		while (step()) {
+			// each step checks itself
+		}
+	}
+
+	/**
+	 * Checks the settled round against the log and moves on to the next.
+	 * @throws IllegalStateException if it comes out differently.
+	 */
+	@Override
+	public void roundEnded(BlackjackEngine engine) {
+		for (int s = 0; s < engine.seats(); s++) {
+			long r = records[next + s];
+			if (log.seat(r) != s) {
+				throw diverged(s, "the log has seat " + log.seat(r) + " here");
+			}
+			if (log.outcome(r) != engine.outcome(s).ordinal()) {
+				throw diverged(s, engine.outcome(s) + " instead of " + BlackjackEngine.Outcome.values()[log.outcome(r)]);
+			}
+			if (log.payout(r) != engine.roundPayout(s)) {
+				throw diverged(s, "paid " + Ledger.format(engine.roundPayout(s)) + " instead of " + Ledger.format(log.payout(r)));
+			}
+			played.clear();
+			for (int h = 0; h < engine.handCount(s); h++) {
+				Hand hand = engine.playerHand(s, h);
+				for (int i = 0; i < hand.size(); i++) {
+					played.add(hand.ordinalAt(i));
+				}
+			}
+			int playerCards = Math.min(played.size(), HandHistory.CARD_SLOTS);
+			checkCards(s, "player", played, playerCards, log.playerCardCount(r), r, false);
+			int dealerCards = Math.min(engine.dealerHand().size(), HandHistory.CARD_SLOTS - playerCards);
+			checkCards(s, "dealer", engine.dealerHand(), dealerCards, log.dealerCardCount(r), r, true);
+		}
+		next += engine.seats();
+		dealt = false;
+		rounds++;
+	}
+
+	/** Compares the cards of a hand that the log keeps with the ones it recorded. */
+	private void checkCards(int seat, String whose, Hand hand, int kept, int count, long r, boolean dealer) {
+		if (kept != count) {
+			throw diverged(seat, whose + " holds " + hand.size() + " cards instead of " + count);
+		}
+		for (int i = 0; i < count; i++) {
+			int logged = dealer ? log.dealerCard(r, i) : log.playerCard(r, i);
+			if (hand.ordinalAt(i) != logged) {
+				throw diverged(seat, whose + " card " + i + " is " + Card.of(hand.ordinalAt(i)) + " instead of " + Card.of(logged));
+			}
+		}
+	}
+
+	private IllegalStateException diverged(int seat, String how) {
+		return new IllegalStateException("shoe " + log.seed(records[0]) + ", round " + (rounds + 1) + ", seat " + seat + ": " + how);
+	}
+
+	/**
+	 * Replays every shoe in a log.
+	 * @param args the log file.
+	 * @throws IOException if the log cannot be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		long start = System.nanoTime();
+		try (HandHistoryReader log = new HandHistoryReader(Paths.get(args[0]))) {
+			long rounds = 0;
+			int replayed = 0;
+			int unseeded = 0;
+			int diverged = 0;
+			for (long[] records : shoes(log).values()) {
+				if (log.seed(records[0]) == 0) {
+					unseeded++;
+					continue;
+				}
+				Replay replay = new Replay(log, records);
+				try {
+					replay.run();
+					replayed++;
+				} catch (IllegalStateException e) {
+					diverged++;
+					System.out.println(e.getMessage());
+				}
+				rounds += replay.rounds();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%d hands in %d shoes: %d replayed, %d diverged, %d unseeded%n",
+				log.size(), replayed + diverged + unseeded, replayed, diverged, unseeded);
+			System.out.printf("%d rounds dealt again in %.2f s%n", rounds, seconds);
+		}
+	}
+}
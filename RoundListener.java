@@ -0,0 +1,17 @@
+/**
+ * RoundListener.java
+ *
+ * <code>RoundListener</code> is told when a <code>BlackjackEngine</code>
+ * settles a round.
+ * Listeners are called on the playing thread and should return quickly.
+ */
+public interface RoundListener {
+
+	/**
+	 * Called after a round is settled and the player has been paid.
+	 * The engine's hands, outcome, and round accessors describe the
+	 * round until the listener returns.
+	 * @param engine the engine that played the round.
+	 */
+	void roundEnded(BlackjackEngine engine);
+}
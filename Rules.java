@@ -0,0 +1,454 @@
+import java.util.Arrays;
+
+/**
+ * Rules.java
+ *
+ * <code>Rules</code> is one set of table rules: whether the dealer hits
+ * soft 17, what a natural pays, whether a player's 21 wins at once, which
+ * hands may double, how many hands a pair may be split into, and whether
+ * surrender and insurance are offered. A rule set is immutable; make one
+ * from DEFAULT or CASINO with the <code>with</code> methods, or parse one
+ * from a list of options such as <code>h17,6:5,double=any,das,split=4</code>.
+ * <p>
+ * Every rule set is compiled once, when it is made, into small tables:
+ * whether the dealer draws, by hard total and ace; what each kind of
+ * settlement pays back per unit staked; how a hand standing on a total
+ * settles against each dealer total; and which totals may double. The
+ * engine and the simulators read only the tables, so playing to one rule
+ * set costs no more per hand than playing to another.
+ * <p>
+ * Every rule set also has a code of a few bits, 0 for DEFAULT, which hand
+ * histories and snapshots keep.
+ */
+public final class Rules {
+
+	/** The most hands a pair can be split into. */
+	public static final int MAX_HANDS = 4;
+
+	/** Which first two cards may be doubled on. */
+	public static final int DOUBLE_NONE = 0;
+	public static final int DOUBLE_ANY = 1;
+	public static final int DOUBLE_9_TO_11 = 2;
+	public static final int DOUBLE_10_11 = 3;
+	private static final String[] DOUBLE_NAMES = {"none", "any", "9-11", "10-11"};
+
+	/** What a natural may pay, as {won, staked}; the first is the default. */
+	private static final int[][] BLACKJACK_PAYS = {{3, 2}, {6, 5}, {1, 1}, {2, 1}, {7, 5}};
+
+	/** The kinds of settlement, indices into the payout table. */
+	public static final int LOSE = 0;
+	public static final int PUSH = 1;
+	public static final int WIN = 2;
+	public static final int NATURAL = 3;
+	public static final int SURRENDER = 4;
+	public static final int INSURANCE = 5;
+	/** Payouts are in tenths of the stake, so every one the rules allow is exact. */
+	private static final int PAYOUT_SCALE = 10;
+
+	/** The dealer's totals in the settlement table: 17 to 21, then any bust. */
+	private static final int DEALER_BUST = 22;
+
+	/** The code's fields, each the difference from DEFAULT. */
+	private static final int HIT_SOFT_17 = 1;
+	private static final int TWENTY_ONE_STANDS = 1 << 1;
+	private static final int DOUBLING_SHIFT = 2;
+	private static final int DOUBLE_AFTER_SPLIT = 1 << 4;
+	private static final int HANDS_SHIFT = 5;
+	private static final int RESPLIT_ACES = 1 << 7;
+	private static final int HIT_SPLIT_ACES = 1 << 8;
+	private static final int LATE_SURRENDER = 1 << 9;
+	private static final int OFFER_INSURANCE = 1 << 10;
+	private static final int BLACKJACK_SHIFT = 11;
+	private static final int CODE_BITS = 14;
+
+	/**
+	 * The rules the game has always had: the dealer stands on soft 17, a
+	 * natural pays 3:2, a player reaching 21 wins at once, and there is no
+	 * doubling, splitting, surrender or insurance.
+	 */
+	public static final Rules DEFAULT = new Rules(0);
+	/**
+	 * A common casino table: the dealer stands on soft 17, a natural pays
+	 * 3:2, any two cards may double, also after splitting, pairs split to
+	 * four hands, split aces take one card each, and late surrender and
+	 * insurance are offered.
+	 */
+	public static final Rules CASINO = DEFAULT.withTwentyOneWins(false).withDoubling(DOUBLE_ANY)
+		.withDoubleAfterSplit(true).withMaxHands(MAX_HANDS).withSurrender(true).withInsurance(true);
+
+	/** The rule set's code. */
+	private final int code;
+
+	/** true if the dealer draws on a hard total and ace flag, by hard * 2 + (ace ? 1 : 0). */
+	private final boolean[] dealerHits = new boolean[64];
+	/** What each kind of settlement pays back, stake included, in tenths of the stake. */
+	private final long[] payouts = new long[6];
+	/** The kind of settlement of a hand standing on a total, by total * 23 + dealer total. */
+	private final byte[] settlements = new byte[22 * 23];
+	/** true if a first two cards' total may double, by total * 2 + (soft ? 1 : 0). */
+	private final boolean[] doubles = new boolean[44];
+
+
+	private Rules(int code) {
+		this.code = code;
+
+		for (int hard = 0; hard < 32; hard++) {
+			for (int ace = 0; ace < 2; ace++) {
+				boolean soft = ace == 1 && hard <= 11;
+				int total = soft ? hard + 10 : hard;
+				dealerHits[hard * 2 + ace] = total <= 16 || (soft && total == 17 && hitSoft17());
+			}
+		}
+
+		int[] pays = BLACKJACK_PAYS[code >>> BLACKJACK_SHIFT];
+		payouts[LOSE] = 0;
+		payouts[PUSH] = PAYOUT_SCALE;
+		payouts[WIN] = 2 * PAYOUT_SCALE;
+		payouts[NATURAL] = PAYOUT_SCALE + PAYOUT_SCALE * pays[0] / pays[1];
+		payouts[SURRENDER] = PAYOUT_SCALE / 2;
+		payouts[INSURANCE] = 3 * PAYOUT_SCALE;
+
+		for (int player = 0; player <= 21; player++) {
+			for (int dealer = 0; dealer <= DEALER_BUST; dealer++) {
+				int kind;
+				if (player == 21 && twentyOneWins()) {
+					kind = WIN;
+				} else if (dealer == DEALER_BUST || dealer < player) {
+					kind = WIN;
+				} else if (dealer > player) {
+					kind = LOSE;
+				} else {
+					kind = PUSH;
+				}
+				settlements[player * 23 + dealer] = (byte) kind;
+			}
+		}
+
+		for (int total = 0; total <= 21; total++) {
+			for (int soft = 0; soft < 2; soft++) {
+				boolean allowed;
+				switch (doubling()) {
+					case DOUBLE_ANY:
+						allowed = true;
+						break;
+					case DOUBLE_9_TO_11:
+						allowed = soft == 0 && total >= 9 && total <= 11;
+						break;
+					case DOUBLE_10_11:
+						allowed = soft == 0 && total >= 10 && total <= 11;
+						break;
+					default:
+						allowed = false;
+				}
+				doubles[total * 2 + soft] = allowed;
+			}
+		}
+	}
+
+	/**
+	 * Finds the rule set with a code.
+	 * @param code a code from <code>code()</code>.
+	 * @return the rule set.
+	 * @throws IllegalArgumentException if it is not the code of a rule set.
+	 */
+	public static Rules of(int code) {
+		if (code == 0) {
+			return DEFAULT;
+		}
+		if (code < 0 || code >= 1 << CODE_BITS || (code >>> BLACKJACK_SHIFT) >= BLACKJACK_PAYS.length) {
+			throw new IllegalArgumentException("not a rules code: " + code);
+		}
+		return new Rules(code);
+	}
+
+	/**
+	 * Reads a rule set from a list of options separated by commas, each
+	 * changing DEFAULT, or CASINO if the first is <code>casino</code>:
+	 * <pre>
+	 *     h17, s17              the dealer hits or stands on soft 17
+	 *     3:2, 6:5, 1:1, 2:1, 7:5   what a natural pays
+	 *     21wins, 21stands      a player reaching 21 wins at once, or stands
+	 *     double=none|any|9-11|10-11   the first two cards that may double
+	 *     das                   doubling after a split
+	 *     split=n               pairs split into at most n hands, 1 to MAX_HANDS
+	 *     rsa, hsa              split aces may be split again, or hit
+	 *     surrender, insurance  late surrender, and insurance, are offered
+	 *     default, casino       start again from DEFAULT or CASINO
+	 * </pre>
+	 * @param options the options, e.g. the output of <code>toString</code>.
+	 * @return the rule set.
+	 * @throws IllegalArgumentException if an option is not one of those.
+	 */
+	public static Rules parse(String options) {
+		Rules rules = DEFAULT;
+		for (String option : options.split(",")) {
+			String o = option.trim().toLowerCase();
+			int eq = o.indexOf('=');
+			String value = eq < 0 ? "" : o.substring(eq + 1);
+			switch (eq < 0 ? o : o.substring(0, eq)) {
+				case "":
+					break;
+				case "default":
+					rules = DEFAULT;
+					break;
+				case "casino":
+					rules = CASINO;
+					break;
+				case "h17":
+					rules = rules.withHitSoft17(true);
+					break;
+				case "s17":
+					rules = rules.withHitSoft17(false);
+					break;
+				case "21wins":
+					rules = rules.withTwentyOneWins(true);
+					break;
+				case "21stands":
+					rules = rules.withTwentyOneWins(false);
+					break;
+				case "double":
+					int doubling = Arrays.asList(DOUBLE_NAMES).indexOf(value);
+					if (doubling < 0) {
+						throw new IllegalArgumentException("not a doubling rule: " + option);
+					}
+					rules = rules.withDoubling(doubling);
+					break;
+				case "das":
+					rules = rules.withDoubleAfterSplit(true);
+					break;
+				case "split":
+					try {
+						rules = rules.withMaxHands(Integer.parseInt(value));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("not a number of hands: " + option);
+					}
+					break;
+				case "rsa":
+					rules = rules.withResplitAces(true);
+					break;
+				case "hsa":
+					rules = rules.withHitSplitAces(true);
+					break;
+				case "surrender":
+					rules = rules.withSurrender(true);
+					break;
+				case "insurance":
+					rules = rules.withInsurance(true);
+					break;
+				default:
+					int pays = blackjackPays(o);
+					if (pays < 0) {
+						throw new IllegalArgumentException("not a rule: " + option);
+					}
+					rules = rules.with(BLACKJACK_SHIFT, 7, pays);
+			}
+		}
+		return rules;
+	}
+
+	private static int blackjackPays(String ratio) {
+		for (int i = 0; i < BLACKJACK_PAYS.length; i++) {
+			if (ratio.equals(BLACKJACK_PAYS[i][0] + ":" + BLACKJACK_PAYS[i][1])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** @return the rule set with a field of the code replaced. */
+	private Rules with(int shift, int mask, int value) {
+		return of((code & ~(mask << shift)) | (value << shift));
+	}
+
+	private Rules with(int flag, boolean set) {
+		return of(set ? code | flag : code & ~flag);
+	}
+
+	/** @return these rules with the dealer hitting soft 17 or not. */
+	public Rules withHitSoft17(boolean hit) {
+		return with(HIT_SOFT_17, hit);
+	}
+
+	/** @return these rules with a player reaching 21 winning at once, or standing. */
+	public Rules withTwentyOneWins(boolean wins) {
+		return with(TWENTY_ONE_STANDS, !wins);
+	}
+
+	/**
+	 * @param doubling one of the DOUBLE codes.
+	 * @return these rules with that doubling rule.
+	 */
+	public Rules withDoubling(int doubling) {
+		if (doubling < DOUBLE_NONE || doubling > DOUBLE_10_11) {
+			throw new IllegalArgumentException("not a doubling rule: " + doubling);
+		}
+		return with(DOUBLING_SHIFT, 3, doubling);
+	}
+
+	/** @return these rules with doubling after a split allowed or not. */
+	public Rules withDoubleAfterSplit(boolean allowed) {
+		return with(DOUBLE_AFTER_SPLIT, allowed);
+	}
+
+	/**
+	 * @param hands the most hands a pair can be split into, 1 (no splitting) to MAX_HANDS.
+	 * @return these rules with that limit.
+	 */
+	public Rules withMaxHands(int hands) {
+		if (hands < 1 || hands > MAX_HANDS) {
+			throw new IllegalArgumentException("hands must be 1 to " + MAX_HANDS + ": " + hands);
+		}
+		return with(HANDS_SHIFT, 3, hands - 1);
+	}
+
+	/** @return these rules with split aces allowed to split again or not. */
+	public Rules withResplitAces(boolean allowed) {
+		return with(RESPLIT_ACES, allowed);
+	}
+
+	/** @return these rules with split aces allowed to hit or not. */
+	public Rules withHitSplitAces(boolean allowed) {
+		return with(HIT_SPLIT_ACES, allowed);
+	}
+
+	/** @return these rules with late surrender offered or not. */
+	public Rules withSurrender(boolean offered) {
+		return with(LATE_SURRENDER, offered);
+	}
+
+	/** @return these rules with insurance offered or not. */
+	public Rules withInsurance(boolean offered) {
+		return with(OFFER_INSURANCE, offered);
+	}
+
+	/** @return the code of this rule set, 0 for DEFAULT. */
+	public int code() {
+		return code;
+	}
+
+	/** @return true if the dealer hits soft 17. */
+	public boolean hitSoft17() {
+		return (code & HIT_SOFT_17) != 0;
+	}
+
+	/** @return true if a player reaching 21 wins at once, even against the dealer's 21. */
+	public boolean twentyOneWins() {
+		return (code & TWENTY_ONE_STANDS) == 0;
+	}
+
+	/** @return one of the DOUBLE codes. */
+	public int doubling() {
+		return (code >>> DOUBLING_SHIFT) & 3;
+	}
+
+	/** @return true if a split hand may double. */
+	public boolean doubleAfterSplit() {
+		return (code & DOUBLE_AFTER_SPLIT) != 0;
+	}
+
+	/** @return the most hands a pair can be split into, 1 if pairs cannot be split. */
+	public int maxHands() {
+		return ((code >>> HANDS_SHIFT) & 3) + 1;
+	}
+
+	/** @return true if split aces may be split again. */
+	public boolean resplitAces() {
+		return (code & RESPLIT_ACES) != 0;
+	}
+
+	/** @return true if split aces may be hit; if not, each takes one card. */
+	public boolean hitSplitAces() {
+		return (code & HIT_SPLIT_ACES) != 0;
+	}
+
+	/** @return true if a player may give up half the bet instead of playing the hand. */
+	public boolean surrender() {
+		return (code & LATE_SURRENDER) != 0;
+	}
+
+	/** @return true if insurance is offered when the dealer shows an ace. */
+	public boolean insurance() {
+		return (code & OFFER_INSURANCE) != 0;
+	}
+
+	/**
+	 * Decides whether the dealer draws.
+	 * @param hardTotal the dealer's total with every ace counted as 1.
+	 * @param aces true if the dealer holds an ace.
+	 * @return true to draw another card.
+	 */
+	public boolean dealerHits(int hardTotal, boolean aces) {
+		return dealerHits[(hardTotal << 1) | (aces ? 1 : 0)];
+	}
+
+	/**
+	 * Works out what a settlement pays back.
+	 * @param kind one of the settlement kinds, LOSE to INSURANCE.
+	 * @param stake the amount staked; every payout of a multiple of 10 is exact.
+	 * @return the amount paid back, stake included.
+	 */
+	public long payout(int kind, long stake) {
+		return stake * payouts[kind] / PAYOUT_SCALE;
+	}
+
+	/**
+	 * Settles a hand that stood against the dealer's finished hand.
+	 * @param playerTotal the player's total, 21 or less.
+	 * @param dealerTotal the dealer's total, 17 or more.
+	 * @return WIN, PUSH or LOSE.
+	 */
+	public int settle(int playerTotal, int dealerTotal) {
+		return settlements[playerTotal * 23 + Math.min(dealerTotal, DEALER_BUST)];
+	}
+
+	/**
+	 * Settles the naturals once the dealer has looked at the hole card.
+	 * @param player true if the player holds a natural.
+	 * @param dealer true if the dealer does.
+	 * @return NATURAL, PUSH or LOSE, or -1 if the hand is played on.
+	 */
+	public static int naturals(boolean player, boolean dealer) {
+		return player ? (dealer ? PUSH : NATURAL) : (dealer ? LOSE : -1);
+	}
+
+	/**
+	 * Decides whether the first two cards of a hand may double.
+	 * @param total the hand's total.
+	 * @param soft true if an ace is counted as 11.
+	 * @return true if the rules allow it.
+	 */
+	public boolean canDouble(int total, boolean soft) {
+		return doubles[(total << 1) | (soft ? 1 : 0)];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Rules && ((Rules) o).code == code;
+	}
+
+	@Override
+	public int hashCode() {
+		return code;
+	}
+
+	/**
+	 * Lists every rule, in the form <code>parse</code> reads.
+	 * @return the rules, e.g. <code>s17,3:2,21wins,double=none,split=1</code>.
+	 */
+	@Override
+	public String toString() {
+		int[] pays = BLACKJACK_PAYS[code >>> BLACKJACK_SHIFT];
+		StringBuilder out = new StringBuilder();
+		out.append(hitSoft17() ? "h17" : "s17");
+		out.append(',').append(pays[0]).append(':').append(pays[1]);
+		out.append(twentyOneWins() ? ",21wins" : ",21stands");
+		out.append(",double=").append(DOUBLE_NAMES[doubling()]);
+		out.append(doubleAfterSplit() ? ",das" : "");
+		out.append(",split=").append(maxHands());
+		out.append(resplitAces() ? ",rsa" : "");
+		out.append(hitSplitAces() ? ",hsa" : "");
+		out.append(surrender() ? ",surrender" : "");
+		out.append(insurance() ? ",insurance" : "");
+		return out.toString();
+	}
+}
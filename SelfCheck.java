@@ -0,0 +1,173 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * SelfCheck.java
+ *
+ * <code>SelfCheck</code> plays the game headless and checks what must
+ * always hold, whatever the cards. Each check throws an
+ * <code>IllegalStateException</code> saying what went wrong.
+ * <pre>
+ *     java SelfCheck              run every check; exits with status 1 if any fails
+ *     java SelfCheck name         run only the checks whose names contain name
+ * </pre>
+ */
+public class SelfCheck {
+
+	/** The checks, in the order they are run. */
+	private final Map<String, Runnable> checks = new LinkedHashMap<String, Runnable>();
+
+
+	private SelfCheck() {
+		checks.put("count.reshuffle", SelfCheck::countAfterReshuffle);
+		checks.put("engine.bet", SelfCheck::betOnlyBeforeActing);
+		checks.put("engine.bet.seats", SelfCheck::betAtTableAfterDeal);
+	}
+
+	/**
+	 * Deals rounds from a one-deck shoe until it runs out in the middle of
+	 * them, and checks that the count after every reshuffle is the count of
+	 * the cards still on the table.
+	 */
+	private static void countAfterReshuffle() {
+		SplittableRandom rng = new SplittableRandom(14);
+		Shoe shoe = new Shoe(1, Shoe.DEFAULT_PENETRATION, rng);
+		CountTracker tracker = new CountTracker(shoe.deck().totalSize(), CountingSystem.HI_LO);
+		shoe.addDealListener(tracker);
+
+		int reshuffles = 0;
+		for (int round = 0; round < 100_000; round++) {
+			shoe.startRound();
+			long shuffles = shoe.shuffles();
+			// until the shoe runs out, the count goes on from where the last round left it
+			int running = tracker.runningCount(0);
+			int seen = tracker.cardsSeen();
+			int table = 0;
+			int onTable = 0;
+
+			int cards = 4 + rng.nextInt(20);
+			for (int i = 0; i < cards; i++) {
+				int weight = CountingSystem.HI_LO.weight(shoe.dealOrdinal());
+				running += weight;
+				seen++;
+				table += weight;
+				onTable++;
+				if (shoe.shuffles() != shuffles) {
+					// the discards went back in; what is left to see is all but the table
+					shuffles = shoe.shuffles();
+					running = table;
+					seen = onTable;
+					reshuffles++;
+				}
+				if (tracker.runningCount(0) != running || tracker.cardsSeen() != seen) {
+					throw new IllegalStateException("round " + round + ": running count " + tracker.runningCount(0)
+						+ " of " + tracker.cardsSeen() + " cards instead of " + running + " of " + seen);
+				}
+			}
+		}
+		if (reshuffles == 0) {
+			throw new IllegalStateException("the shoe never ran out in the middle of a round");
+		}
+	}
+
+	/**
+	 * Checks that a seat can bet after the deal only until it acts, and
+	 * cannot act without a bet.
+	 */
+	private static void betOnlyBeforeActing() {
+		BlackjackEngine engine = new BlackjackEngine(new Shoe(6, Shoe.DEFAULT_PENETRATION, new SplittableRandom(1)), 1, 1000, Rules.CASINO);
+		for (int round = 0; round < 10_000; round++) {
+			engine.setPlayerMoney(1000);
+			engine.deal();
+			if (engine.isInsuranceOpen()) {
+				rejected(() -> engine.insure(false), "an insurance decision without a bet");
+			} else {
+				rejected(engine::hit, "a hit without a bet");
+				rejected(engine::stand, "a stand without a bet");
+			}
+			engine.bet(10);
+			if (engine.isInsuranceOpen()) {
+				engine.insure(false);
+			}
+			while (engine.turn() == 0 && engine.playerTotal() < 17) {
+				engine.hit();
+			}
+			if (engine.turn() == 0) {
+				engine.stand();
+			}
+			if (engine.isRoundInPlay()) {
+				throw new IllegalStateException("round " + round + " was not settled");
+			}
+		}
+	}
+
+	/**
+	 * Deals three seats with the last one not yet betting, and checks that
+	 * once the others have played their hands none of them can bet again,
+	 * while the last seat can still come in and play before the dealer.
+	 */
+	private static void betAtTableAfterDeal() {
+		BlackjackEngine engine = new BlackjackEngine(new Shoe(6, Shoe.DEFAULT_PENETRATION, new SplittableRandom(2)), 3, 1000, Rules.DEFAULT);
+		for (int round = 0; round < 10_000; round++) {
+			for (int s = 0; s < 3; s++) {
+				engine.setPlayerMoney(s, 1000);
+			}
+			engine.bet(0, 10);
+			engine.bet(1, 10);
+			engine.deal();
+			for (int s = 0; s < 2; s++) {
+				while (engine.turn() == s && engine.playerTotal(s) < 17) {
+					engine.hit(s);
+				}
+				if (engine.turn() == s) {
+					engine.stand(s);
+				}
+				final int seat = s;
+				rejected(() -> engine.bet(seat, 10), "a second bet from seat " + s + " after it played");
+			}
+			if (engine.turn() != 2) {
+				throw new IllegalStateException("round " + round + ": turn " + engine.turn() + " before seat 2 bet");
+			}
+			rejected(() -> engine.hit(2), "a hit from seat 2 without a bet");
+			engine.bet(2, 10);
+			if (engine.turn() == 2) {
+				engine.stand(2);
+			}
+			if (engine.isRoundInPlay()) {
+				throw new IllegalStateException("round " + round + " was not settled");
+			}
+		}
+	}
+
+	/** Checks that an action is refused with an <code>IllegalStateException</code>. */
+	private static void rejected(Runnable action, String what) {
+		try {
+			action.run();
+		} catch (IllegalStateException e) {
+			return;
+		}
+		throw new IllegalStateException(what + " was allowed");
+	}
+
+	public static void main(String[] args) {
+		String filter = args.length > 0 ? args[0] : "";
+		int failures = 0;
+		for (Map.Entry<String, Runnable> c : new SelfCheck().checks.entrySet()) {
+			if (!c.getKey().contains(filter)) {
+				continue;
+			}
+			try {
+				c.getValue().run();
+				System.out.printf("%-22s ok%n", c.getKey());
+			} catch (IllegalStateException e) {
+				System.out.printf("%-22s FAILED: %s%n", c.getKey(), e.getMessage());
+				failures++;
+			}
+		}
+		if (failures > 0) {
+			System.out.println(failures + " check(s) failed");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * SessionStore.java
+ *
+ * <code>SessionStore</code> keeps the latest snapshot of a table in a file
+ * so a game can be picked up where it was left. Taking a snapshot costs a
+ * copy of a few hundred bytes on the caller's thread; the file is written
+ * on a background thread, to a temporary file that then replaces the old
+ * one, so the file always holds a whole snapshot. Snapshots saved faster
+ * than they can be written are skipped in favour of the newest.
+ * The file is <code>.blackjack-session</code> in the user's home directory,
+ * or the one named by the <code>blackjack.session</code> system property.
+ */
+public class SessionStore implements Closeable {
+
+	/** The system property naming the session file. */
+	public static final String SESSION_PROPERTY = "blackjack.session";
+	/** How long close waits for the last snapshot to be written, in seconds. */
+	private static final int CLOSE_TIMEOUT = 5;
+
+	/** The session file, and the file each snapshot is written to first. */
+	private final Path path;
+	private final Path temp;
+	/** The newest snapshot not yet written, or null. */
+	private final AtomicReference<byte[]> pending = new AtomicReference<byte[]>();
+	/** Writes the snapshots, one at a time. */
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "session-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+
+	/**
+	 * Creates a new <code>SessionStore</code> for the file named by
+	 * SESSION_PROPERTY, or the default file.
+	 */
+	public SessionStore() {
+		this(Paths.get(System.getProperty(SESSION_PROPERTY, System.getProperty("user.home") + "/.blackjack-session")));
+	}
+
+	/**
+	 * Creates a new <code>SessionStore</code> instance.
+	 * @param path the session file.
+	 */
+	public SessionStore(Path path) {
+		this.path = path;
+		this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+	}
+
+	/**
+	 * Puts a table back as it was in the saved session.
+	 * @param engine the table to restore.
+	 * @return true if a session was restored, false if none was saved.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file does not hold a session
+	 *         for this table; the table is left as it was.
+	 */
+	public boolean restore(BlackjackEngine engine) throws IOException {
+		byte[] snapshot;
+		try {
+			snapshot = Files.readAllBytes(path);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		engine.restore(snapshot);
+		return true;
+	}
+
+	/**
+	 * Takes a snapshot of a table and has it written in the background.
+	 * Must be called on the thread playing the table.
+	 * @param engine the table to save.
+	 */
+	public void save(BlackjackEngine engine) {
+		if (pending.getAndSet(engine.snapshot()) == null) {
+			writer.execute(this::write);
+		}
+	}
+
+	private void write() {
+		byte[] snapshot = pending.getAndSet(null);
+		if (snapshot == null) {
+			return;
+		}
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			out.force(false);
+		} catch (IOException e) {
+			System.err.println("session not saved: " + e);
+			return;
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.err.println("session not saved: " + e);
+		}
+	}
+
+	/**
+	 * Waits for the last snapshot to be written and stops the writer.
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
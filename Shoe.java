@@ -0,0 +1,312 @@
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Shoe.java
+ *
+ * <code>Shoe</code> is the dealing box of a table: one to eight decks
+ * shuffled together with a cut card. Once the cut card comes out the
+ * shoe is reshuffled before the next round, never in the middle of one.
+ * Cards from finished rounds are counted as discards until then.
+ * <p>
+ * A shoe made from a seed draws every shuffle from a generator made from
+ * the seed and the number of the shuffle, so the same seed and the same
+ * decisions deal the same cards, and a restored shoe carries on exactly
+ * as the saved one would have.
+ */
+public class Shoe {
+
+	/** The fewest decks a shoe can hold. */
+	public static final int MIN_DECKS = 1;
+	/** The most decks a shoe can hold. */
+	public static final int MAX_DECKS = 8;
+	/** The number of decks used when none is given. */
+	public static final int DEFAULT_DECKS = 1;
+	/** The fraction of the shoe dealt before the cut card comes out when none is given. */
+	public static final double DEFAULT_PENETRATION = 0.75;
+
+	/** The cards, dealt from the top down. */
+	private final Deck deck;
+	/** The number of decks in the shoe. */
+	private final int decks;
+	/** The fraction of the shoe dealt before the cut card comes out. */
+	private final double penetration;
+	/** The shoe is reshuffled when this many undealt cards or fewer remain. */
+	private final int cutCard;
+
+	/** The number of undealt cards when the current round started. */
+	private int roundStart;
+	/** The number of times the shoe has been shuffled. */
+	private long shuffles;
+	/** The seed every shuffle follows from, if seeded. */
+	private long seed;
+	private boolean seeded;
+
+
+	/**
+	 * Creates a new <code>Shoe</code> with the default number of decks and
+	 * penetration, and a seed of its own.
+	 */
+	public Shoe() {
+		this(DEFAULT_DECKS, DEFAULT_PENETRATION, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Creates a new <code>Shoe</code> whose every shuffle follows from a seed.
+	 * @param decks the number of decks, from MIN_DECKS to MAX_DECKS.
+	 * @param penetration the fraction of the shoe dealt before the cut card comes out,
+	 *        greater than 0 and at most 1.
+	 * @param seed the seed.
+	 * @throws IllegalArgumentException if decks or penetration is out of range.
+	 */
+	public Shoe(int decks, double penetration, long seed) {
+		this(decks, penetration, shuffleRandom(seed, 1));
+		this.seed = seed;
+		this.seeded = true;
+	}
+
+	/**
+	 * Creates a new <code>Shoe</code> instance.
+	 * @param decks the number of decks, from MIN_DECKS to MAX_DECKS.
+	 * @param penetration the fraction of the shoe dealt before the cut card comes out,
+	 *        greater than 0 and at most 1.
+	 * @param rng the random number generator used to shuffle.
+	 * @throws IllegalArgumentException if decks or penetration is out of range.
+	 */
+	public Shoe(int decks, double penetration, RandomGenerator rng) {
+		if (decks < MIN_DECKS || decks > MAX_DECKS) {
+			throw new IllegalArgumentException("decks must be " + MIN_DECKS + " to " + MAX_DECKS + ": " + decks);
+		}
+		if (!(penetration > 0 && penetration <= 1)) {
+			throw new IllegalArgumentException("penetration must be in (0, 1]: " + penetration);
+		}
+
+		this.deck = new Deck(decks, rng);
+		this.decks = decks;
+		this.penetration = penetration;
+		this.cutCard = deck.totalSize() - (int) Math.round(deck.totalSize() * penetration);
+		this.roundStart = deck.size();
+		this.shuffles = 1;
+	}
+
+	/**
+	 * Starts a round. Everything dealt so far goes to the discards,
+	 * and the shoe is reshuffled if the cut card has come out.
+	 */
+	public void startRound() {
+		if (isCutCardReached()) {
+			shuffle();
+		}
+		roundStart = deck.size();
+	}
+
+	/**
+	 * Collects every card and shuffles the whole shoe.
+	 * Should only be called between rounds.
+	 */
+	public void shuffle() {
+		long start = System.nanoTime();
+		shuffles++;
+		reseed();
+		deck.shuffle();
+		roundStart = deck.size();
+		Metrics.SHUFFLES.record(System.nanoTime() - start);
+	}
+
+	/** Gives a seeded shoe's deck the generator for the shuffle about to be made. */
+	private void reseed() {
+		if (seeded) {
+			deck.setRandom(shuffleRandom(seed, shuffles));
+		}
+	}
+
+	/**
+	 * Makes the generator for one shuffle of a seeded shoe.
+	 * @param seed the shoe's seed.
+	 * @param shuffle the number of the shuffle, from 1.
+	 */
+	private static RandomGenerator shuffleRandom(long seed, long shuffle) {
+		// spread the seeds apart so no two shuffles' streams overlap
+		long z = seed + shuffle * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new SplittableRandom(z ^ (z >>> 31));
+	}
+
+	/**
+	 * Deals a card. If the shoe runs out in the middle of a round,
+	 * the discards are shuffled back in first.
+	 * @return the card just dealt.
+	 */
+	public Card deal() {
+		return Card.of(dealOrdinal());
+	}
+
+	/**
+	 * Deals a card without looking up its <code>Card</code>.
+	 * @return the ordinal of the card just dealt.
+	 */
+	public int dealOrdinal() {
+		if (deck.isEmpty()) {
+			reshuffleDiscards();
+		}
+		return deck.dealOrdinal();
+	}
+
+	/** Shuffles the discards back in, leaving the cards on the table dealt. */
+	private void reshuffleDiscards() {
+		long start = System.nanoTime();
+		int inPlay = inPlay();
+		shuffles++;
+		reseed();
+		deck.reshuffleDealt(inPlay);
+		roundStart = deck.size() + inPlay;
+		Metrics.SHUFFLES.record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Deals a card of a certain value, chosen at random from the undealt
+	 * cards of that value. If none is left, the discards are shuffled back
+	 * in first.
+	 * @param value the point value wanted, 1 (ace) to 10.
+	 * @return the card just dealt, or null if every card of that value is on the table.
+	 */
+	public Card deal(int value) {
+		Card card = deck.deal(value);
+		if (card == null && discards() > 0) {
+			reshuffleDiscards();
+			card = deck.deal(value);
+		}
+		return card;
+	}
+
+	/**
+	 * Arranges the undealt cards so the next ones dealt are the given cards,
+	 * e.g. to play out a scenario. A shoe whose cut card has come out is
+	 * shuffled at the start of the next round, which undoes the stack, so
+	 * between rounds shuffle it first.
+	 * @param ordinals the ordinals of the cards to deal next, the first first.
+	 * @throws IllegalArgumentException if there are not enough undealt copies of a card.
+	 * @see Deck#stack(int...)
+	 */
+	public void stack(int... ordinals) {
+		deck.stack(ordinals);
+	}
+
+	/**
+	 * Registers a listener to be told about every card dealt and every shuffle.
+	 * @param listener the listener.
+	 */
+	public void addDealListener(DealListener listener) {
+		deck.addDealListener(listener);
+	}
+
+	/**
+	 * Writes the order of the cards, where the current round started,
+	 * the number of shuffles and the seed.
+	 * @param out the buffer to write to.
+	 */
+	public void writeTo(ByteBuffer out) {
+		out.put((byte) decks);
+		out.putInt(roundStart);
+		out.putLong(shuffles);
+		out.put((byte) (seeded ? 1 : 0));
+		out.putLong(seed);
+		deck.writeTo(out);
+	}
+
+	/**
+	 * Puts the shoe back as written by <code>writeTo</code>. A shoe saved
+	 * with a seed takes it, so later shuffles are the ones the saved shoe
+	 * would have made; otherwise they use this shoe's generator.
+	 * @param in the buffer to read from.
+	 * @throws IllegalArgumentException if it was written by a shoe with
+	 *         a different number of decks.
+	 */
+	public void readFrom(ByteBuffer in) {
+		int written = in.get();
+		if (written != decks) {
+			throw new IllegalArgumentException("shoe of " + written + " decks, not " + decks);
+		}
+		int start = in.getInt();
+		long count = in.getLong();
+		boolean savedSeeded = in.get() != 0;
+		long savedSeed = in.getLong();
+		if (start < 0 || start > deck.totalSize()) {
+			throw new IllegalArgumentException("round start out of range: " + start);
+		}
+		deck.readFrom(in);
+		roundStart = Math.max(start, deck.size());
+		shuffles = count;
+		if (savedSeeded) {
+			seed = savedSeed;
+			seeded = true;
+		}
+	}
+
+	/**
+	 * Makes this shoe the same as another: the same cards in the same
+	 * order, the same round and, if the other is seeded, the same seed.
+	 * Lets two tables play the same rounds.
+	 * @param other a shoe with as many decks.
+	 * @throws IllegalArgumentException if the other has a different number of decks.
+	 */
+	public void copyFrom(Shoe other) {
+		if (other.decks != decks) {
+			throw new IllegalArgumentException("shoe of " + other.decks + " decks, not " + decks);
+		}
+		deck.copyFrom(other.deck);
+		roundStart = other.roundStart;
+		shuffles = other.shuffles;
+		if (other.seeded) {
+			seed = other.seed;
+			seeded = true;
+		}
+	}
+
+	/** @return true if the cut card has come out and the next round starts with a shuffle. */
+	public boolean isCutCardReached() {
+		return deck.size() <= cutCard;
+	}
+
+	/** @return the number of undealt cards. */
+	public int size() {
+		return deck.size();
+	}
+
+	/** @return the number of cards dealt this round. */
+	public int inPlay() {
+		return roundStart - deck.size();
+	}
+
+	/** @return the number of cards from earlier rounds waiting to be shuffled back in. */
+	public int discards() {
+		return deck.totalSize() - roundStart;
+	}
+
+	/** @return the number of decks in the shoe. */
+	public int decks() {
+		return decks;
+	}
+
+	/** @return the fraction of the shoe dealt before the cut card comes out. */
+	public double penetration() {
+		return penetration;
+	}
+
+	/** @return the number of times the shoe has been shuffled. */
+	public long shuffles() {
+		return shuffles;
+	}
+
+	/** @return the seed every shuffle follows from, or 0 if the shoe was given a generator instead. */
+	public long seed() {
+		return seeded ? seed : 0;
+	}
+
+	/** @return the deck holding the shoe's cards. */
+	public Deck deck() {
+		return deck;
+	}
+}
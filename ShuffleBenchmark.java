@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * ShuffleBenchmark.java
+ *
+ * <code>ShuffleBenchmark</code> compares the throughput of
+ * <code>Deck.shuffle</code> with the riffle shuffle it replaced.
+ */
+public class ShuffleBenchmark {
+
+	/** Shuffles timed per measurement. */
+	private static final int SHUFFLES = 2_000_000;
+	/** Measurements taken, after the same number of warm up rounds. */
+	private static final int ROUNDS = 5;
+
+	/** Keeps the JIT from removing the work being timed. */
+	private static long sink;
+
+
+	/**
+	 * The old riffle shuffle: 3 to 22 passes, each splitting the deck
+	 * into two new arrays and interleaving them into a new list.
+	 */
+	private static ArrayList<Card> riffle(ArrayList<Card> cards) {
+		int shuffleAmount = (int)(Math.random()*20) + 3;
+		for (int notUsed = 0; notUsed < shuffleAmount; notUsed++) {
+			int half = cards.size() / 2;
+			Card[] first = new Card[half];
+			Card[] second = new Card[half];
+
+			for (int i = 0; i < half; i++) {
+				first[i] = cards.get(i);
+			}
+			for (int i = half; i < cards.size(); i++) {
+				second[i-half] = cards.get(i);
+			}
+
+			int rng = (int)(Math.random() * 2);
+			if (rng == 0) {
+				Card[] tmp = first;
+				first = second;
+				second = tmp;
+			}
+
+			ArrayList<Card> tmp = new ArrayList<Card>();
+			for (int i = 0; i < half; i++) {
+				tmp.add(first[i]);
+				tmp.add(second[i]);
+			}
+			cards = tmp;
+		}
+		return cards;
+	}
+
+	private static double timeRiffle() {
+		ArrayList<Card> cards = new ArrayList<Card>();
+		for (int i = 0; i < Card.COUNT; i++) {
+			cards.add(Card.of(i));
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < SHUFFLES; i++) {
+			cards = riffle(cards);
+			sink += cards.get(0).ordinal();
+		}
+		return SHUFFLES * 1e9 / (System.nanoTime() - start);
+	}
+
+	private static double timeFisherYates(Deck deck) {
+		long start = System.nanoTime();
+		for (int i = 0; i < SHUFFLES; i++) {
+			deck.shuffle();
+			sink += deck.ordinalAt(0);
+		}
+		return SHUFFLES * 1e9 / (System.nanoTime() - start);
+	}
+
+	public static void main(String[] args) {
+		Deck deck = new Deck(BlackjackEngine.RANKS, BlackjackEngine.SUITS, BlackjackEngine.POINT_VALUES, new SplittableRandom());
+
+		for (int round = -ROUNDS; round < ROUNDS; round++) {
+			double riffle = timeRiffle();
+			double fisherYates = timeFisherYates(deck);
+			if (round >= 0) {
+				System.out.printf("riffle: %,12.0f shuffles/s   fisher-yates: %,12.0f shuffles/s   (x%.1f)%n",
+					riffle, fisherYates, fisherYates / riffle);
+			}
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * SimulationResult.java
+ *
+ * <code>SimulationResult</code> holds the totals of a batch of simulated hands.
+ * Results from separate workers are combined with <code>merge</code>.
+ */
+public class SimulationResult {
+
+	/** The number of hands played. */
+	private long hands;
+	/** Hands where the player came out ahead, behind, or even. */
+	private long wins;
+	private long losses;
+	private long pushes;
+	/** Hands where the player was dealt a natural 21. */
+	private long blackjacks;
+	/** The total amount wagered. */
+	private long wagered;
+	/** The sum of the net result of every hand, and the sum of their squares. */
+	private long net;
+	private long netSquares;
+
+
+	/**
+	 * Records one finished hand.
+	 * @param bet the amount wagered.
+	 * @param handNet the money won (positive) or lost (negative).
+	 * @param natural true if the player was dealt blackjack.
+	 */
+	public void record(int bet, int handNet, boolean natural) {
+		hands++;
+		wagered += bet;
+		net += handNet;
+		netSquares += (long) handNet * handNet;
+
+		if (handNet > 0) {
+			wins++;
+		} else if (handNet < 0) {
+			losses++;
+		} else {
+			pushes++;
+		}
+		if (natural) {
+			blackjacks++;
+		}
+	}
+
+	/**
+	 * Adds the totals of another result to this one.
+	 * @param other the result to add.
+	 * @return this result.
+	 */
+	public SimulationResult merge(SimulationResult other) {
+		hands += other.hands;
+		wins += other.wins;
+		losses += other.losses;
+		pushes += other.pushes;
+		blackjacks += other.blackjacks;
+		wagered += other.wagered;
+		net += other.net;
+		netSquares += other.netSquares;
+		return this;
+	}
+
+	/** @return the number of hands played. */
+	public long hands() {
+		return hands;
+	}
+
+	/** @return the total amount wagered. */
+	public long wagered() {
+		return wagered;
+	}
+
+	/** @return the money won (positive) or lost (negative) over all hands. */
+	public long net() {
+		return net;
+	}
+
+	/** @return the house's expected gain per unit wagered. */
+	public double houseEdge() {
+		return wagered == 0 ? 0 : -(double) net / wagered;
+	}
+
+	/** @return the fraction of hands the player won. */
+	public double winRate() {
+		return rate(wins);
+	}
+
+	/** @return the fraction of hands the player lost. */
+	public double lossRate() {
+		return rate(losses);
+	}
+
+	/** @return the fraction of hands that pushed. */
+	public double pushRate() {
+		return rate(pushes);
+	}
+
+	/** @return the fraction of hands where the player was dealt blackjack. */
+	public double blackjackRate() {
+		return rate(blackjacks);
+	}
+
+	/** @return the variance of the net result of a single hand. */
+	public double variance() {
+		if (hands < 2) {
+			return 0;
+		}
+		double mean = (double) net / hands;
+		return ((double) netSquares - mean * net) / (hands - 1);
+	}
+
+	private double rate(long count) {
+		return hands == 0 ? 0 : (double) count / hands;
+	}
+
+	/**
+	 * Generates and returns a report of this result.
+	 * @return a string representation of this result.
+	 */
+	@Override
+	public String toString() {
+		return String.format(
+			"hands = %d%nhouse edge = %.4f%%%nwin = %.4f%%   loss = %.4f%%   push = %.4f%%   blackjack = %.4f%%%nnet = %d   variance per hand = %.4f%n",
+			hands, houseEdge() * 100,
+			winRate() * 100, lossRate() * 100, pushRate() * 100, blackjackRate() * 100,
+			net, variance());
+	}
+}
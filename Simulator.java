@@ -0,0 +1,332 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Simulator.java
+ *
+ * <code>Simulator</code> plays a large number of hands with a fixed
+ * strategy on headless engines, split across every core with fork-join.
+ * Each worker owns its engine, shoe and random stream, so workers share nothing
+ * until their results are merged. Every shoe is seeded from the run's seed,
+ * so the same seed plays the same hands, and two strategies can be compared
+ * on the very same cards. With one seat, a worker can instead play its hands
+ * many tables at a time on a <code>BatchEvaluator</code>. Every table plays
+ * by the same <code>Rules</code>; insurance is always declined.
+ */
+public class Simulator {
+
+	/** The amount bet on each hand. A multiple of ten, so everything the rules can pay is whole units. */
+	public static final int BET = 10;
+	/** The money each seat starts a round with: enough to double every hand it can split into, and insure. */
+	private static final int STAKE = BET * 2 * Rules.MAX_HANDS + BET / 2;
+	/** Hands below this count are played by one worker instead of being split further. */
+	private static final long CHUNK = 1 << 20;
+
+	/** The strategy every hand is played with. */
+	private final PlayerStrategy strategy;
+	/** The rules every table plays by. */
+	private final Rules rules;
+	/** The number of decks in each worker's shoe. */
+	private final int decks;
+	/** The number of seats at each worker's table, all played with the strategy. */
+	private final int seats;
+	/** The pool the work is split across. */
+	private final ForkJoinPool pool;
+	/** The hand history every hand is appended to, or null. */
+	private Path history;
+	/** The tables each worker plays in lock-step on a BatchEvaluator, or 0 to play on an engine. */
+	private int lanes;
+
+
+	/**
+	 * Creates a new <code>Simulator</code> that uses every core.
+	 * @param strategy the strategy to play every hand with.
+	 * @param decks the number of decks in each shoe.
+	 */
+	public Simulator(PlayerStrategy strategy, int decks) {
+		this(strategy, decks, 1, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a new <code>Simulator</code> with one seat per table.
+	 * @param strategy the strategy to play every hand with.
+	 * @param decks the number of decks in each shoe.
+	 * @param pool the pool to run the workers in.
+	 */
+	public Simulator(PlayerStrategy strategy, int decks, ForkJoinPool pool) {
+		this(strategy, decks, 1, pool);
+	}
+
+	/**
+	 * Creates a new <code>Simulator</code> playing by the default rules.
+	 * @see #Simulator(PlayerStrategy, Rules, int, int, ForkJoinPool)
+	 */
+	public Simulator(PlayerStrategy strategy, int decks, int seats, ForkJoinPool pool) {
+		this(strategy, Rules.DEFAULT, decks, seats, pool);
+	}
+
+	/**
+	 * Creates a new <code>Simulator</code> instance.
+	 * @param strategy the strategy to play every hand with.
+	 * @param rules the rules every table plays by.
+	 * @param decks the number of decks in each shoe.
+	 * @param seats the number of seats at each table, from 1 to <code>BlackjackEngine.MAX_SEATS</code>.
+	 * @param pool the pool to run the workers in.
+	 */
+	public Simulator(PlayerStrategy strategy, Rules rules, int decks, int seats, ForkJoinPool pool) {
+		this.strategy = strategy;
+		this.rules = rules;
+		this.decks = decks;
+		this.seats = seats;
+		this.pool = pool;
+	}
+
+	/**
+	 * Appends every hand played from now on to a hand history.
+	 * @param history the log file, or null to stop logging.
+	 */
+	public void setHistory(Path history) {
+		this.history = history;
+	}
+
+	/**
+	 * Plays every worker's hands on a <code>BatchEvaluator</code> of so many
+	 * tables instead of an engine. The evaluator's shoes are shuffled from
+	 * a generator split off the run's seed, so the same seed still plays
+	 * the same hands, but not the hands an engine would play, and they
+	 * cannot be logged.
+	 * @param lanes the number of tables each worker plays in lock-step, or 0
+	 *        to play on an engine.
+	 */
+	public void setLanes(int lanes) {
+		if (lanes < 0) {
+			throw new IllegalArgumentException("lanes must not be negative: " + lanes);
+		}
+		this.lanes = lanes;
+	}
+
+	/**
+	 * Plays at least the given number of hands, in whole rounds.
+	 * @param hands the number of hands to play, counting every seat's hand.
+	 * @param seed the seed every worker's random stream is split from.
+	 * @return the merged result of all hands.
+	 * @throws IllegalStateException if hands are to be played in lanes with
+	 *         more than one seat, a hand history, or rules that allow splitting.
+	 */
+	public SimulationResult run(long hands, long seed) {
+		if (lanes > 0 && (seats != 1 || history != null || rules.maxHands() > 1)) {
+			throw new IllegalStateException("hands played in lanes have one seat, no hand history and no splits");
+		}
+		return pool.invoke(new Batch((hands + seats - 1) / seats, new SplittableRandom(seed)));
+	}
+
+	/**
+	 * Plays at least the given number of hands with this simulator's
+	 * strategy and again with another, dealing both the same cards.
+	 * Hands are always played on engines, and not logged.
+	 * @param other the strategy to compare with.
+	 * @param hands the number of hands to play each way, counting every seat's hand.
+	 * @param seed the seed every worker's random stream is split from.
+	 * @return the merged comparison of all hands.
+	 */
+	public Comparison compare(PlayerStrategy other, long hands, long seed) {
+		return pool.invoke(new PairedBatch((hands + seats - 1) / seats, other, new SplittableRandom(seed)));
+	}
+
+	/**
+	 * Plays rounds on one engine.
+	 * @param rounds the number of rounds to play.
+	 * @param engine the engine to play on.
+	 * @return the result of every seat's hands.
+	 */
+	private SimulationResult play(long rounds, BlackjackEngine engine) {
+		SimulationResult result = new SimulationResult();
+		for (long i = 0; i < rounds; i++) {
+			playRound(engine, strategy);
+			for (int s = 0; s < seats; s++) {
+				result.record(BET, engine.playerMoney(s) - STAKE, isNatural(engine, s));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Plays rounds on two engines, each with its own strategy, dealing the
+	 * second the same cards as the first.
+	 * @param rounds the number of rounds to play.
+	 * @param first the engine played with this simulator's strategy, whose shoe deals.
+	 * @param second the engine played with the other strategy.
+	 * @param other the other strategy.
+	 * @return the comparison of every seat's hands.
+	 */
+	private Comparison compare(long rounds, BlackjackEngine first, BlackjackEngine second, PlayerStrategy other) {
+		Comparison comparison = new Comparison();
+		for (long i = 0; i < rounds; i++) {
+			second.shoe().copyFrom(first.shoe());
+			playRound(first, strategy);
+			playRound(second, other);
+			for (int s = 0; s < seats; s++) {
+				comparison.record(BET, first.playerMoney(s) - STAKE, second.playerMoney(s) - STAKE,
+					isNatural(first, s));
+			}
+		}
+		return comparison;
+	}
+
+	/**
+	 * Bets on every seat, deals and plays one round.
+	 * @param engine the engine to play on.
+	 * @param strategy the strategy every seat plays.
+	 */
+	private void playRound(BlackjackEngine engine, PlayerStrategy strategy) {
+		for (int s = 0; s < seats; s++) {
+			engine.setPlayerMoney(s, STAKE);
+			engine.bet(s, BET);
+		}
+		engine.deal();
+		for (int s = 0; s < seats && engine.isInsuranceOpen(); s++) {
+			engine.insure(s, false);
+		}
+
+		// seats play in order, so a seat that has not stayed is the one to act
+		for (int s = 0; s < seats; s++) {
+			if (engine.turn() == s) {
+				strategy.playTurn(engine, s);
+			}
+		}
+	}
+
+	/** @return true if a seat was dealt a natural and did not split. */
+	private static boolean isNatural(BlackjackEngine engine, int seat) {
+		return engine.handCount(seat) == 1 && engine.playerHand(seat, 0).isBlackjack();
+	}
+
+	/**
+	 * Creates a worker's engine, its shoe seeded from the worker's stream
+	 * so every round it plays can be dealt again.
+	 */
+	private BlackjackEngine engine(long seed) {
+		return new BlackjackEngine(new Shoe(decks, Shoe.DEFAULT_PENETRATION, seed), seats, STAKE, rules);
+	}
+
+	/**
+	 * A share of the hands, split in half until it is small enough to play.
+	 */
+	@SuppressWarnings("serial")
+	private class Batch extends RecursiveTask<SimulationResult> {
+		private final long rounds;
+		private final SplittableRandom rng;
+
+		Batch(long rounds, SplittableRandom rng) {
+			this.rounds = rounds;
+			this.rng = rng;
+		}
+
+		@Override
+		protected SimulationResult compute() {
+			if (rounds * seats <= CHUNK) {
+				if (lanes > 0) {
+					SimulationResult result = new SimulationResult();
+					new BatchEvaluator(strategy, rules, decks, Shoe.DEFAULT_PENETRATION, lanes, rng.split()).play(rounds, result);
+					return result;
+				}
+				BlackjackEngine engine = engine(rng.nextLong());
+				if (history == null) {
+					return play(rounds, engine);
+				}
+				try (HandHistory log = new HandHistory(history)) {
+					engine.addRoundListener(log);
+					return play(rounds, engine);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			long half = rounds / 2;
+			Batch first = new Batch(half, rng.split());
+			Batch second = new Batch(rounds - half, rng.split());
+			first.fork();
+			SimulationResult result = second.compute();
+			return result.merge(first.join());
+		}
+	}
+
+	/**
+	 * A share of the hands to be played both ways, split like a <code>Batch</code>.
+	 */
+	@SuppressWarnings("serial")
+	private class PairedBatch extends RecursiveTask<Comparison> {
+		private final long rounds;
+		private final PlayerStrategy other;
+		private final SplittableRandom rng;
+
+		PairedBatch(long rounds, PlayerStrategy other, SplittableRandom rng) {
+			this.rounds = rounds;
+			this.other = other;
+			this.rng = rng;
+		}
+
+		@Override
+		protected Comparison compute() {
+			if (rounds * seats <= CHUNK) {
+				long seed = rng.nextLong();
+				return compare(rounds, engine(seed), engine(seed), other);
+			}
+
+			long half = rounds / 2;
+			PairedBatch first = new PairedBatch(half, other, rng.split());
+			PairedBatch second = new PairedBatch(rounds - half, other, rng.split());
+			first.fork();
+			Comparison comparison = second.compute();
+			return comparison.merge(first.join());
+		}
+	}
+
+	/**
+	 * Runs a simulation from the command line.
+	 * @param args the number of hands, then optionally a seed, the number of decks,
+	 *        the strategy: "basic" (the default), "dealer", or "compare" to play
+	 *        basic strategy against the dealer's on the same cards, a hand history
+	 *        file to append every hand to ("-" for none), the number of seats,
+	 *        the number of tables each worker plays in lock-step (0, the default, to
+	 *        play on engines), and the table rules as <code>Rules.parse</code> reads them.
+	 */
+	public static void main(String[] args) {
+		long hands = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000L;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		int decks = args.length > 2 ? Integer.parseInt(args[2]) : Shoe.DEFAULT_DECKS;
+		String mode = args.length > 3 ? args[3] : "basic";
+		Rules rules = args.length > 7 ? Rules.parse(args[7]) : Rules.DEFAULT;
+		PlayerStrategy strategy = mode.equals("dealer") ? PlayerStrategy.MIMIC_DEALER : BasicStrategy.forRules(rules);
+
+		int seats = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+		int lanes = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+
+		Simulator simulator = new Simulator(strategy, rules, decks, seats, ForkJoinPool.commonPool());
+		simulator.setLanes(lanes);
+		if (args.length > 4 && !args[4].equals("-")) {
+			simulator.setHistory(Paths.get(args[4]));
+		}
+
+		long start = System.nanoTime();
+		long played;
+		if (mode.equals("compare")) {
+			Comparison comparison = simulator.compare(PlayerStrategy.MIMIC_DEALER, hands, seed);
+			System.out.print(comparison);
+			played = comparison.first().hands() * 2;
+		} else {
+			SimulationResult result = simulator.run(hands, seed);
+			System.out.print(result);
+			played = result.hands();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%.2f s, %.0f hands/s on %d cores, %d seat(s)%n",
+			seconds, played / seconds, ForkJoinPool.commonPool().getParallelism(), seats);
+	}
+}
@@ -1,4 +1,4 @@
 rmdir bin
 mkdir bin\
 javac -d .\bin -sourcepath . Main.java
-java -cp .\bin Main
\ No newline at end of file
+java -cp .\bin;. Main
\ No newline at end of file